@@ -18,7 +18,9 @@
 
 package io.syndesis.dv;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 import io.syndesis.dv.model.DataVirtualization;
@@ -79,6 +81,17 @@ public interface RepositoryManager {
 
     List<String> findDataVirtualizationNames();
 
+    /**
+     * @return the current version of each virtualization by name
+     */
+    Map<String, Long> findDataVirtualizationVersions();
+
+    /**
+     * @param limit
+     * @return the names of the most recently modified virtualizations, most recent first
+     */
+    List<String> findRecentlyModifiedDataVirtualizationNames(int limit);
+
 
     ViewDefinition findViewDefinitionByNameIgnoreCase(String dvName, String viewName);
 
@@ -95,5 +108,25 @@ public interface RepositoryManager {
     List<ViewDefinition> saveAllViewDefinitions(
             Iterable<ViewDefinition> entities);
 
+    /**
+     * Replace the source tables that the view reads from
+     * @param viewDefinition
+     * @param sourcePaths the source table paths of the form schema=x/table=y
+     */
+    void updateViewDependencies(ViewDefinition viewDefinition, Collection<String> sourcePaths);
+
+    /**
+     * @param schemaNames
+     * @return the names of the virtualizations with views that read from any of the schemas
+     */
+    List<String> findDataVirtualizationNamesBySchemaNames(Collection<String> schemaNames);
+
+    /**
+     * @param schemaName
+     * @param tableName may be null to match any table of the schema
+     * @return the views that read from the schema table
+     */
+    List<? extends ViewDefinition> findViewDefinitionsBySourceTable(String schemaName, String tableName);
+
     boolean isNameInUse(String name);
 }
@@ -345,5 +345,20 @@ public interface StringConstants {
      */
     String SERVICE_VDB_SUFFIX = "vdb"; //$NON-NLS-1$
 
+    /**
+     * Connection (source) vdb suffix
+     */
+    String CONNECTION_VDB_SUFFIX = "conn"; //$NON-NLS-1$
+
+    /**
+     * Suffix of a connection vdb that is loading metadata from the source
+     */
+    String LOAD_VDB_SUFFIX = "-load"; //$NON-NLS-1$
+
+    /**
+     * Name of the master preview vdb
+     */
+    String PREVIEW_VDB = "Preview"; //$NON-NLS-1$
+
     String ID_LABEL = "id"; //$NON-NLS-1$
 }
@@ -18,14 +18,18 @@
 package io.syndesis.dv.metadata;
 
 import java.util.Collection;
+import java.util.Map;
 
 import io.syndesis.dv.datasources.DefaultSyndesisDataSource;
+import io.syndesis.dv.metadata.query.QSCursor;
+import io.syndesis.dv.metadata.query.QSOptions;
 import io.syndesis.dv.metadata.query.QSResult;
 import org.teiid.adminapi.AdminException;
 import org.teiid.adminapi.impl.VDBMetaData;
 import org.teiid.deployers.VDBLifeCycleListener;
 import org.teiid.metadata.MetadataException;
 import org.teiid.metadata.Schema;
+import org.teiid.metadata.Table;
 import org.teiid.query.validator.ValidatorReport;
 
 import io.syndesis.dv.KException;
@@ -151,6 +155,49 @@ public interface MetadataInstance extends StringConstants {
      */
     QSResult query(String vdbName, String query, int offset, int limit) throws KException;
 
+    /**
+     * Query the vdb with given name
+     *
+     * @param vdbName the name of the vdb to query
+     * @param query   the SQL query
+     * @param offset  an offset of the results to return
+     * @param limit   a limit on the number of results to return
+     * @param options the execution options
+     * @return the set of results
+     * @throws KException
+     */
+    QSResult query(String vdbName, String query, int offset, int limit, QSOptions options) throws KException;
+
+    /**
+     * Execute a query against the vdb with given name, but rather than
+     * materializing the results return a cursor over them.
+     *
+     * @param vdbName the name of the vdb to query
+     * @param query   the SQL query
+     * @param offset  an offset of the results to return
+     * @param limit   a limit on the number of results to return
+     * @param fetchSize the number of rows to fetch from the engine at a time, or 0 for the driver default
+     * @return the cursor, which must be closed by the caller
+     * @throws KException
+     */
+    default QSCursor openCursor(String vdbName, String query, int offset, int limit, int fetchSize) throws KException {
+        return openCursor(vdbName, query, offset, limit, new QSOptions().setFetchSize(fetchSize));
+    }
+
+    /**
+     * Execute a query against the vdb with given name, but rather than
+     * materializing the results return a cursor over them.
+     *
+     * @param vdbName the name of the vdb to query
+     * @param query   the SQL query
+     * @param offset  an offset of the results to return
+     * @param limit   a limit on the number of results to return
+     * @param options the execution options
+     * @return the cursor, which must be closed by the caller
+     * @throws KException
+     */
+    QSCursor openCursor(String vdbName, String query, int offset, int limit, QSOptions options) throws KException;
+
     /**
      * @return the collection of deployed vdbs
      * @throws KException
@@ -206,6 +253,30 @@ public interface MetadataInstance extends StringConstants {
      */
     void deploy(VDBMetaData vdb) throws KException;
 
+    /**
+     * Replace the definitions of views in a deployed vdb without redeploying it.
+     * Only the view transformations may differ - the columns, keys and options
+     * must match the deployed views.
+     *
+     * @param vdbName the name of the deployed vdb
+     * @param modelName the name of the model containing the views
+     * @param views the views with their new transformations
+     * @param properties vdb properties to set once the views are updated
+     * @return false if the views could not be updated and a full deployment is needed
+     * @throws KException
+     */
+    boolean updateViewDefinitions(String vdbName, String modelName, Collection<Table> views,
+            Map<String, String> properties) throws KException;
+
+    /**
+     * Set a property of a deployed vdb
+     *
+     * @param vdbName the name of the deployed vdb
+     * @return false if the vdb is not deployed
+     * @throws KException
+     */
+    boolean setVdbProperty(String vdbName, String key, String value) throws KException;
+
     Collection<String> getDataSourceNames() throws AdminException;
 
     void registerDataSource(DefaultSyndesisDataSource dataSource) throws AdminException;
@@ -17,9 +17,12 @@
  */
 package io.syndesis.dv.metadata;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import io.syndesis.dv.metadata.MetadataInstance.ValidationResult;
+import org.teiid.adminapi.Model.MetadataStatus;
 import org.teiid.adminapi.VDBImport;
 import org.teiid.metadata.Schema;
 
@@ -75,6 +78,11 @@ public interface TeiidVdb {
      */
     List<String> getValidityErrors();
 
+    /**
+     * @return the metadata load status of each model by name, in model order
+     */
+    Map<String, MetadataStatus> getModelMetadataStatus();
+
     /**
      * @param key
      *
@@ -96,6 +104,24 @@ public interface TeiidVdb {
 
     ValidationResult validate(String ddl) throws KException;
 
+    /**
+     * Validate each ddl independently, in parallel, against this vdb
+     * @param ddls
+     * @return the results in the same order as the ddls
+     * @throws KException
+     */
+    List<ValidationResult> validate(List<String> ddls) throws KException;
+
+    /**
+     * Validate the ddl against this vdb overlaid with the views of the given model,
+     * which do not need to be deployed
+     * @param modelName the name of the model of the overlay views
+     * @param viewDdls the ddl of the other views
+     * @param ddl
+     * @throws KException
+     */
+    ValidationResult validate(String modelName, Collection<String> viewDdls, String ddl) throws KException;
+
     boolean hasValidationError(String schemaName, String objectName,
             String childType);
 
@@ -19,21 +19,30 @@ package io.syndesis.dv.metadata.internal;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.sql.Clob;
 import java.sql.Connection;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.xml.stream.XMLStreamException;
 
 import io.syndesis.dv.datasources.DefaultSyndesisDataSource;
@@ -42,6 +51,8 @@ import io.syndesis.dv.metadata.MetadataInstance;
 import io.syndesis.dv.metadata.TeiidDataSource;
 import io.syndesis.dv.metadata.TeiidVdb;
 import io.syndesis.dv.metadata.query.QSColumn;
+import io.syndesis.dv.metadata.query.QSCursor;
+import io.syndesis.dv.metadata.query.QSOptions;
 import io.syndesis.dv.metadata.query.QSResult;
 import io.syndesis.dv.metadata.query.QSRow;
 import io.syndesis.dv.utils.KLog;
@@ -61,40 +72,47 @@ import org.teiid.adminapi.impl.ModelMetaData.Message.Severity;
 import org.teiid.adminapi.impl.SourceMappingMetadata;
 import org.teiid.adminapi.impl.VDBMetaData;
 import org.teiid.adminapi.impl.VDBMetadataParser;
-import org.teiid.api.exception.query.FunctionExecutionException;
 import org.teiid.api.exception.query.QueryMetadataException;
+import org.teiid.api.exception.query.QueryParserException;
 import org.teiid.core.TeiidComponentException;
-import org.teiid.core.types.ArrayImpl;
-import org.teiid.core.types.TransformationException;
-import org.teiid.core.types.basic.ClobToStringTransform;
 import org.teiid.core.util.AccessibleByteArrayOutputStream;
 import org.teiid.core.util.ArgCheck;
+import org.teiid.deployers.CompositeVDB;
 import org.teiid.deployers.VDBLifeCycleListener;
 import org.teiid.deployers.VirtualDatabaseException;
 import org.teiid.dqp.internal.datamgr.ConnectorManagerRepository.ConnectorManagerException;
 import org.teiid.metadata.AbstractMetadataRecord;
+import org.teiid.metadata.Column;
+import org.teiid.metadata.KeyRecord;
 import org.teiid.metadata.MetadataException;
 import org.teiid.metadata.MetadataFactory;
+import org.teiid.metadata.MetadataStore;
 import org.teiid.metadata.Schema;
-import org.teiid.query.function.GeometryUtils;
+import org.teiid.metadata.Table;
 import org.teiid.query.metadata.BasicQueryMetadataWrapper;
 import org.teiid.query.metadata.CompositeMetadataStore;
 import org.teiid.query.metadata.MetadataValidator;
 import org.teiid.query.metadata.SystemMetadata;
 import org.teiid.query.metadata.TransformationMetadata;
 import org.teiid.query.parser.QueryParser;
+import org.teiid.query.sql.symbol.GroupSymbol;
+import org.teiid.query.sql.visitor.GroupCollectorVisitor;
 import org.teiid.query.validator.ValidatorReport;
 import org.teiid.translator.TranslatorException;
 import org.teiid.util.FullyQualifiedName;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.zaxxer.hikari.HikariDataSource;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
 import io.syndesis.dv.KException;
+import io.syndesis.dv.StringConstants;
 
 @Component
-public class DefaultMetadataInstance implements MetadataInstance {
+public class DefaultMetadataInstance implements MetadataInstance, MeterBinder {
 
     public class TeiidVdbImpl implements TeiidVdb {
 
@@ -153,6 +171,15 @@ public class DefaultMetadataInstance implements MetadataInstance {
             return vdb.getValidityErrors();
         }
 
+        @Override
+        public Map<String, MetadataStatus> getModelMetadataStatus() {
+            Map<String, MetadataStatus> result = new LinkedHashMap<>();
+            for (org.teiid.adminapi.Model m : vdb.getModels()) {
+                result.put(m.getName(), m.getMetadataStatus());
+            }
+            return result;
+        }
+
         @Override
         public String getPropertyValue(String key) {
             return vdb.getPropertyValue(key);
@@ -181,6 +208,16 @@ public class DefaultMetadataInstance implements MetadataInstance {
             return DefaultMetadataInstance.this.validate(this, ddl, false);
         }
 
+        @Override
+        public List<ValidationResult> validate(List<String> ddls) throws KException {
+            return DefaultMetadataInstance.this.validate(this, ddls);
+        }
+
+        @Override
+        public ValidationResult validate(String modelName, Collection<String> viewDdls, String ddl) throws KException {
+            return DefaultMetadataInstance.this.validate(this, modelName, viewDdls, ddl);
+        }
+
         @Override
         public List<Schema> getLocalSchema() {
             if (!hasLoaded()) {
@@ -193,36 +230,45 @@ public class DefaultMetadataInstance implements MetadataInstance {
                     .collect(Collectors.toList());
         }
 
-        private Set<String> haveErrors;
-
         @Override
         public boolean hasValidationError(String schemaName, String objectName, String childType) {
-            ModelMetaData m = this.vdb.getModel(schemaName);
-            if (m == null) {
-                return false;
-            }
-            if (haveErrors == null) {
-                haveErrors = new HashSet<>();
-                for (Message message : m.getMessages()) {
-                    if (message.getPath() != null && message.getSeverity() == Severity.ERROR) {
-                        haveErrors.add(message.getPath());
-                    }
-                }
-            }
             FullyQualifiedName fqn = new FullyQualifiedName(childType, objectName);
-            String path = fqn.toString();
-            return haveErrors.contains(path);
+            return ValidationErrorIndex.get(this.vdb).hasError(schemaName, fqn.toString());
         }
 
     }
 
     public static final String DEFAULT_VDB_VERSION = "1"; //$NON-NLS-1$
 
+    /**
+     * The number of idle local connections to keep for each vdb
+     */
+    private static final int MAX_IDLE_CONNECTIONS_PER_VDB = 4;
+
+    /**
+     * The number of parse results to keep
+     */
+    private static final int MAX_PARSE_CACHE_ENTRIES = 256;
+
     @Autowired
     private TeiidServer server;
 
     private Admin admin;
 
+    private volatile Map<String, TeiidVdbImpl> deployments;
+
+    private ValidationResultCache parseCache = new ValidationResultCache(MAX_PARSE_CACHE_ENTRIES);
+
+    /**
+     * For validating independent view definitions in parallel
+     */
+    private ForkJoinPool validationPool = new ForkJoinPool();
+
+    private VdbDeploymentMetrics deploymentMetrics = new VdbDeploymentMetrics();
+
+    private LocalConnectionPool connectionPool = new LocalConnectionPool(
+            vdb -> connect(vdb, DEFAULT_VDB_VERSION), MAX_IDLE_CONNECTIONS_PER_VDB);
+
     public DefaultMetadataInstance() {
 
     }
@@ -239,17 +285,97 @@ public class DefaultMetadataInstance implements MetadataInstance {
         return admin;
     }
 
+    /**
+     * Get a connection to the vdb.  Connections to the default version
+     * are pooled and returned to the pool when closed.
+     */
     public Connection getConnection(String vdb, String version) {
-        Properties props = new Properties();
-        //TODO: when security working the user name needs to be passed in we need to work delegation model for security
         try {
-            return server.getDriver().connect("jdbc:teiid:"+vdb+"."+version, props);
+            if (DEFAULT_VDB_VERSION.equals(version)) {
+                return connectionPool.getConnection(vdb);
+            }
+            return connect(vdb, version);
         } catch (SQLException e) {
             KLog.getLogger().warn("Could not get a connection to " + vdb, e);
             throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
         }
     }
 
+    private Connection connect(String vdb, String version) throws SQLException {
+        Properties props = new Properties();
+        //TODO: when security working the user name needs to be passed in we need to work delegation model for security
+        return server.getDriver().connect("jdbc:teiid:"+vdb+"."+version, props);
+    }
+
+    @PostConstruct
+    void init() {
+        //index the validation errors once, rather than on each lookup
+        //and record the metadata load times
+        addVDBLifeCycleListener(new VDBLifeCycleListener() {
+            @Override
+            public void added(String name, CompositeVDB vdb) {
+                deploymentMetrics.loadStarted(vdb.getVDB().getName());
+            }
+
+            @Override
+            public void finishedDeployment(String name, CompositeVDB vdb) {
+                ValidationErrorIndex.attach(vdb.getVDB());
+                deploymentMetrics.loadFinished(vdb.getVDB().getName(), vdb.getVDB().getStatus() == Status.FAILED);
+            }
+
+            @Override
+            public void removed(String name, CompositeVDB vdb) {
+                deploymentMetrics.removed(vdb.getVDB().getName());
+            }
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        connectionPool.close();
+        validationPool.shutdownNow();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("dv.local.connections.created", connectionPool, LocalConnectionPool::getCreatedCount) //$NON-NLS-1$
+            .description("local connections created") //$NON-NLS-1$
+            .register(registry);
+        FunctionCounter.builder("dv.local.connections.reused", connectionPool, LocalConnectionPool::getReusedCount) //$NON-NLS-1$
+            .description("local connections reused from the pool") //$NON-NLS-1$
+            .register(registry);
+        FunctionCounter.builder("dv.local.connections.evicted", connectionPool, LocalConnectionPool::getEvictedCount) //$NON-NLS-1$
+            .description("vdb connection pools evicted due to undeploy or redeploy") //$NON-NLS-1$
+            .register(registry);
+        Gauge.builder("dv.local.connections.idle", connectionPool, LocalConnectionPool::getIdleCount) //$NON-NLS-1$
+            .description("idle pooled local connections") //$NON-NLS-1$
+            .register(registry);
+        Gauge.builder("dv.vdbs.deployed", this, DefaultMetadataInstance::getDeployedCount) //$NON-NLS-1$
+            .description("deployed vdbs") //$NON-NLS-1$
+            .register(registry);
+        deploymentMetrics.bindTo(registry);
+    }
+
+    private int getDeployedCount() {
+        try {
+            return getVdbs().size();
+        } catch (KException e) {
+            return 0;
+        }
+    }
+
+    VdbDeploymentMetrics getDeploymentMetrics() {
+        return deploymentMetrics;
+    }
+
+    ValidationResultCache getParseCache() {
+        return parseCache;
+    }
+
+    LocalConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
     /**
      * Wraps error in a {@link KException} if necessary.
      *
@@ -269,10 +395,31 @@ public class DefaultMetadataInstance implements MetadataInstance {
 
     @Override
     public QSResult query(String vdb, String query, int offset, int limit) throws KException {
-        ObjectMapper mapper = new ObjectMapper();
+        return query(vdb, query, offset, limit, new QSOptions());
+    }
 
+    @Override
+    public QSResult query(String vdb, String query, int offset, int limit, QSOptions options) throws KException {
         QSResult result = new QSResult();
 
+        try (QSCursor cursor = openCursor(vdb, query, offset, limit, options)) {
+            for (QSColumn column : cursor.getColumns()) {
+                result.addColumn(column);
+            }
+
+            QSRow row = null;
+            while ((row = cursor.next()) != null) {
+                result.addRow(row);
+            }
+        }
+
+        KLog.getLogger().debug("Query executed and returning %d results", result.getRows().size());
+
+        return result;
+    }
+
+    @Override
+    public QSCursor openCursor(String vdb, String query, int offset, int limit, QSOptions options) throws KException {
         KLog.getLogger().debug("Commencing query execution: %s", query);
 
         Connection connection = null;
@@ -288,6 +435,10 @@ public class DefaultMetadataInstance implements MetadataInstance {
             connection = getConnection(vdb, DEFAULT_VDB_VERSION);
 
             statement = connection.createStatement();
+            options.statementCreated(statement);
+            if (options.isShowPlan()) {
+                statement.execute("SET SHOWPLAN ON"); //$NON-NLS-1$
+            }
 
             KLog.getLogger().debug("Executing SQL Statement for query %s with offset of %d and limit of %d",
                                    query,
@@ -307,58 +458,25 @@ public class DefaultMetadataInstance implements MetadataInstance {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
             }
 
-            ResultSetMetaData rsmd = rs.getMetaData();
-            int columns = rsmd.getColumnCount();
-
-            //
-            // Populate the columns
-            //
-            for (int i = 1; i <= columns; ++i) {
-                String columnName = rsmd.getColumnName(i);
-                String columnLabel = rsmd.getColumnLabel(i);
-                String colTypeName = rsmd.getColumnTypeName(i);
-                QSColumn column = new QSColumn(colTypeName, columnName, columnLabel);
-                result.addColumn(column);
-            }
-
-            while (rs.next()) {
-                QSRow row = new QSRow();
-                for (int i = 1; i <= columns; ++i) {
-                    Object value = rs.getObject(i);
-                    if (value instanceof ArrayImpl) {
-                        row.add(mapper.writeValueAsString(((ArrayImpl)value).getArray()));
-                    } else if (value instanceof java.sql.Blob) {
-                        row.add("blob");
-                    }  else if (value instanceof java.sql.Clob) {
-                        row.add("clob");
-                    }  else if (value instanceof org.teiid.core.types.AbstractGeospatialType) {
-                        Clob clob = GeometryUtils.geometryToClob((org.teiid.core.types.AbstractGeospatialType)value, true);
-                        ClobToStringTransform transform = new ClobToStringTransform();
-                        row.add(transform.transform(clob, String.class));
-                    } else {
-                       row.add(value);
-                    }
-                }
-                result.addRow(row);
-            }
-
-            KLog.getLogger().debug("Query executed and returning %d results", result.getRows().size());
-
-            return result;
-        } catch (SQLException | JsonProcessingException | FunctionExecutionException | TransformationException e) {
+            ResultSetCursor cursor = new ResultSetCursor(connection, statement, rs, options);
+            //the cursor is now responsible for closing
+            connection = null;
+            return cursor;
+        } catch (SQLException e) {
             throw new KException(e);
         } finally {
-            try {
-                if (rs != null)
-                    rs.close();
+            if (connection != null) {
+                try {
+                    if (rs != null)
+                        rs.close();
 
-                if (statement != null)
-                    statement.close();
+                    if (statement != null)
+                        statement.close();
 
-                if (connection != null)
                     connection.close();
-            } catch (SQLException e1) {
-                // ignore
+                } catch (SQLException e1) {
+                    // ignore
+                }
             }
         }
     }
@@ -394,32 +512,78 @@ public class DefaultMetadataInstance implements MetadataInstance {
 
     @Override
     public Collection<TeiidVdb> getVdbs() throws KException {
-        try {
-            Collection<? extends VDB> vdbs = getAdmin().getVDBs();
-            if (vdbs.isEmpty())
-                return Collections.emptyList();
-
-            List<TeiidVdb> teiidVdbs = new ArrayList<>();
-            for (VDB vdb : vdbs) {
-                teiidVdbs.add(new TeiidVdbImpl(vdb));
+        List<TeiidVdb> teiidVdbs = new ArrayList<>();
+        for (TeiidVdbImpl vdb : getDeployments().values()) {
+            if (vdb.getVDBMetaData().getStatus() != Status.REMOVED) {
+                teiidVdbs.add(vdb);
             }
-
-            return teiidVdbs;
-        } catch (AdminException ex) {
-            throw handleError(ex);
         }
+        return teiidVdbs;
     }
 
     @Override
     public TeiidVdbImpl getVdb(String name) throws KException {
-        try {
-            VDB vdb = getAdmin().getVDB(name, DEFAULT_VDB_VERSION);
-            if (vdb == null)
-                return null;
+        TeiidVdbImpl vdb = getDeployments().get(name);
+        if (vdb == null || vdb.getVDBMetaData().getStatus() == Status.REMOVED) {
+            return null;
+        }
+        return vdb;
+    }
 
-            return new TeiidVdbImpl(vdb);
-        } catch (AdminException ex) {
-            throw handleError(ex);
+    /**
+     * Get the registry of the deployed vdbs of the default version by name.
+     * It is seeded from the admin once, then kept current by the lifecycle
+     * events so that lookups are just map reads.
+     */
+    private Map<String, TeiidVdbImpl> getDeployments() throws KException {
+        Map<String, TeiidVdbImpl> result = deployments;
+        if (result != null) {
+            return result;
+        }
+        synchronized (this) {
+            if (deployments != null) {
+                return deployments;
+            }
+            Map<String, TeiidVdbImpl> registry = new ConcurrentHashMap<>();
+            //listen first so that nothing is missed while seeding
+            addVDBLifeCycleListener(new VDBLifeCycleListener() {
+                @Override
+                public void added(String name, CompositeVDB vdb) {
+                    register(vdb);
+                }
+
+                @Override
+                public void finishedDeployment(String name, CompositeVDB vdb) {
+                    register(vdb);
+                }
+
+                @Override
+                public void removed(String name, CompositeVDB vdb) {
+                    if (DEFAULT_VDB_VERSION.equals(vdb.getVDB().getVersion())) {
+                        registry.remove(vdb.getVDB().getName());
+                    }
+                }
+
+                private void register(CompositeVDB vdb) {
+                    VDBMetaData vdbMetadata = vdb.getVDB();
+                    //another listener may have already undeployed
+                    if (DEFAULT_VDB_VERSION.equals(vdbMetadata.getVersion())
+                            && vdbMetadata.getStatus() != Status.REMOVED) {
+                        registry.put(vdbMetadata.getName(), new TeiidVdbImpl(vdbMetadata));
+                    }
+                }
+            });
+            try {
+                for (VDB vdb : getAdmin().getVDBs()) {
+                    if (DEFAULT_VDB_VERSION.equals(vdb.getVersion())) {
+                        registry.putIfAbsent(vdb.getName(), new TeiidVdbImpl(vdb));
+                    }
+                }
+            } catch (AdminException ex) {
+                throw handleError(ex);
+            }
+            deployments = registry;
+            return registry;
         }
     }
 
@@ -433,8 +597,11 @@ public class DefaultMetadataInstance implements MetadataInstance {
 
             VDB existing = admin.getVDB(vdbName, vdb.getVersion());
             if (existing != null) {
+                long start = System.nanoTime();
                 admin.undeploy(existing.getName());
+                deploymentMetrics.undeployed(vdbName, start);
             }
+            connectionPool.evict(vdbName);
 
             for (ModelMetaData model : vdb.getModelMetaDatas().values()) {
                 for (SourceMappingMetadata smm : model.getSourceMappings()) {
@@ -447,20 +614,165 @@ public class DefaultMetadataInstance implements MetadataInstance {
                 }
             }
 
-            server.deployVDB(vdb);
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                server.deployVDB(vdb);
+                failed = false;
+            } finally {
+                deploymentMetrics.deployed(vdbName, start, failed);
+            }
         } catch (AdminException | VirtualDatabaseException
                 | ConnectorManagerException | TranslatorException ex) {
             throw handleError(ex);
         }
     }
 
+    @Override
+    public boolean updateViewDefinitions(String vdbName, String modelName, Collection<Table> views,
+            Map<String, String> properties) throws KException {
+        TeiidVdbImpl vdb = getVdb(vdbName);
+        if (vdb == null || !vdb.isActive() || !vdb.hasLoaded()) {
+            return false;
+        }
+        VDBMetaData vdbMetadata = vdb.getVDBMetaData();
+        ModelMetaData model = vdbMetadata.getModel(modelName);
+        Schema schema = vdb.getSchema(modelName);
+        if (model == null || schema == null) {
+            return false;
+        }
+        //the existing messages would be stale
+        for (Message message : model.getMessages()) {
+            if (message.getSeverity() == Severity.ERROR) {
+                return false;
+            }
+        }
+
+        Map<Table, String> updates = new LinkedHashMap<>();
+        for (Table view : views) {
+            Table existing = schema.getTable(view.getName());
+            if (existing == null || !existing.isVirtual() || !hasSameDefinition(existing, view)) {
+                return false;
+            }
+            updates.put(existing, view.getSelectTransformation());
+        }
+
+        //the event distributor does not fully resolve the new definitions
+        TransformationMetadata qmi = vdbMetadata.getAttachment(TransformationMetadata.class);
+        for (Map.Entry<Table, String> entry : updates.entrySet()) {
+            if (!isValidViewDefinition(vdbMetadata, qmi, entry.getKey(), entry.getValue())) {
+                return false;
+            }
+        }
+
+        try {
+            for (Map.Entry<Table, String> entry : updates.entrySet()) {
+                try {
+                    server.getEventDistributor().setViewDefinition(vdbName, DEFAULT_VDB_VERSION,
+                            entry.getKey(), entry.getValue());
+                } catch (RuntimeException e) {
+                    //typically a resolving error, which a full deployment will report
+                    KLog.getLogger().debug("Could not update view %s, a full deployment is required", e, //$NON-NLS-1$
+                            entry.getKey().getFullName());
+                    return false;
+                }
+            }
+        } finally {
+            //prior validations may no longer be accurate
+            ValidationResultCache.reset(vdbMetadata);
+        }
+
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            vdbMetadata.addProperty(entry.getKey(), entry.getValue());
+        }
+        return true;
+    }
+
+    @Override
+    public boolean setVdbProperty(String vdbName, String key, String value) throws KException {
+        TeiidVdbImpl vdb = getVdb(vdbName);
+        if (vdb == null) {
+            return false;
+        }
+        vdb.getVDBMetaData().addProperty(key, value);
+        return true;
+    }
+
+    /**
+     * Resolve and validate the new transformation of the view against the deployed
+     * metadata.  A copy of the view is used so that the deployed record is not modified.
+     */
+    private static boolean isValidViewDefinition(VDBMetaData vdb, TransformationMetadata qmi,
+            Table existing, String selectTransformation) {
+        ModelMetaData m = new ModelMetaData();
+        m.setName(existing.getParent().getName());
+        MetadataFactory mf = new MetadataFactory(vdb.getName(), DefaultMetadataInstance.DEFAULT_VDB_VERSION, SystemMetadata.getInstance().getRuntimeTypeMap(),m);
+        ValidatorReport report = new ValidatorReport();
+        try {
+            Table view = mf.addTable(existing.getName());
+            view.setVirtual(true);
+            view.setSelectTransformation(selectTransformation);
+            for (Column column : existing.getColumns()) {
+                mf.addColumn(column.getName(), column.getRuntimeType(), view);
+            }
+            new MetadataValidator().validate(vdb, m, view, report, qmi, mf, QueryParser.getQueryParser());
+        } catch (MetadataException | RuntimeException e) {
+            KLog.getLogger().debug("Could not validate view %s, a full deployment is required", e, //$NON-NLS-1$
+                    existing.getFullName());
+            return false;
+        }
+        String error = report.getFailureMessage();
+        if (report.hasItems() && !error.isEmpty()) {
+            KLog.getLogger().debug("View %s is not valid, a full deployment is required: %s", //$NON-NLS-1$
+                    existing.getFullName(), error);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Compare everything about the views other than the transformations
+     */
+    static boolean hasSameDefinition(Table existing, Table view) {
+        if (!Objects.equals(existing.getProperties(), view.getProperties())
+                || !Objects.equals(existing.getAnnotation(), view.getAnnotation())
+                || !getColumnNames(existing.getPrimaryKey()).equals(getColumnNames(view.getPrimaryKey()))
+                || existing.getUniqueKeys().size() != view.getUniqueKeys().size()
+                || existing.getForeignKeys().size() != view.getForeignKeys().size()
+                || existing.getIndexes().size() != view.getIndexes().size()
+                || existing.getColumns().size() != view.getColumns().size()) {
+            return false;
+        }
+        for (int i = 0; i < existing.getColumns().size(); i++) {
+            Column existingColumn = existing.getColumns().get(i);
+            Column column = view.getColumns().get(i);
+            if (!existingColumn.getName().equals(column.getName())
+                    || !Objects.equals(existingColumn.getRuntimeType(), column.getRuntimeType())
+                    || existingColumn.getNullType() != column.getNullType()
+                    || !Objects.equals(existingColumn.getProperties(), column.getProperties())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> getColumnNames(KeyRecord key) {
+        if (key == null) {
+            return Collections.emptyList();
+        }
+        return key.getColumns().stream().map(Column::getName).collect(Collectors.toList());
+    }
+
     @Override
     public void undeployDynamicVdb(String vdbName) throws KException {
         try {
             TeiidVdb vdb = getVdb(vdbName);
             if (vdb != null) {
+                long start = System.nanoTime();
                 getAdmin().undeploy(vdbName);
+                deploymentMetrics.undeployed(vdbName, start);
             }
+            connectionPool.evict(vdbName);
         } catch (AdminException ex) {
             throw handleError(ex);
         }
@@ -515,6 +827,196 @@ public class DefaultMetadataInstance implements MetadataInstance {
     }
 
     public ValidationResult validate(TeiidVdbImpl preview, String ddl, boolean parseOnly) throws KException {
+        ValidationResultCache cache = null;
+        if (!parseOnly) {
+            if (preview == null || !preview.hasLoaded()) {
+                throw new KException("Preview VDB is not available");
+            }
+            cache = ValidationResultCache.forVdb(preview.getVDBMetaData());
+        } else if (preview == null) {
+            cache = parseCache;
+        }
+        if (cache != null) {
+            String key = ValidationResultCache.getKey(ddl);
+            ValidationResult result = cache.get(key);
+            if (result == null) {
+                result = doValidate(preview, ddl, parseOnly);
+                cache.put(key, result);
+            }
+            return result;
+        }
+        return doValidate(preview, ddl, parseOnly);
+    }
+
+    /**
+     * Validate each ddl against the same preview vdb in parallel.  Each ddl is
+     * resolved with its own facade over the shared preview metadata so that
+     * the views do not see each other's definitions.
+     */
+    public List<ValidationResult> validate(TeiidVdbImpl preview, List<String> ddls) throws KException {
+        if (preview == null || !preview.hasLoaded()) {
+            throw new KException("Preview VDB is not available");
+        }
+        List<ForkJoinTask<ValidationResult>> tasks = new ArrayList<>(ddls.size());
+        for (String ddl : ddls) {
+            tasks.add(validationPool.submit(() -> validate(preview, ddl, false)));
+        }
+        List<ValidationResult> results = new ArrayList<>(ddls.size());
+        try {
+            for (ForkJoinTask<ValidationResult> task : tasks) {
+                results.add(task.get());
+            }
+        } catch (ExecutionException e) {
+            throw handleError(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw handleError(e);
+        } finally {
+            for (ForkJoinTask<ValidationResult> task : tasks) {
+                task.cancel(false);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Facade over the deployed metadata that also finds the groups that are only parsed,
+     * then those of the overlay.
+     */
+    private static class ValidationMetadata extends BasicQueryMetadataWrapper {
+        private final CompositeMetadataStore parsed;
+        private final CompositeMetadataStore overlay;
+
+        ValidationMetadata(TransformationMetadata actual, MetadataStore parsed, MetadataStore overlay) {
+            super(actual);
+            this.parsed = parsed == null ? null : new CompositeMetadataStore(parsed);
+            this.overlay = overlay == null ? null : new CompositeMetadataStore(overlay);
+        }
+
+        @Override
+        public Object getGroupID(String groupName) throws TeiidComponentException, QueryMetadataException {
+            try {
+                return super.getGroupID(groupName);
+            } catch (QueryMetadataException e) {
+                if (parsed != null) {
+                    try {
+                        return parsed.findGroup(groupName);
+                    } catch (QueryMetadataException e1) {
+                        if (overlay == null) {
+                            throw e1;
+                        }
+                    }
+                }
+                if (overlay == null) {
+                    throw e;
+                }
+                return overlay.findGroup(groupName);
+            }
+        }
+    }
+
+    /**
+     * Validate the ddl against the preview vdb overlaid with the other views of a model
+     * that are parsed in memory rather than deployed.  The overlay views are resolved
+     * first, so that those without a column list have their columns.  The results are cached
+     * with the preview vdb by the hash of the model name and all of the ddl.
+     */
+    public ValidationResult validate(TeiidVdbImpl preview, String modelName, Collection<String> viewDdls, String ddl) throws KException {
+        if (preview == null || !preview.hasLoaded()) {
+            throw new KException("Preview VDB is not available");
+        }
+        StringBuilder overlayKey = new StringBuilder(modelName);
+        for (String viewDdl : viewDdls) {
+            overlayKey.append(StringConstants.NEW_LINE).append(viewDdl);
+        }
+        overlayKey.append(StringConstants.NEW_LINE).append(ddl);
+
+        ValidationResultCache cache = ValidationResultCache.forVdb(preview.getVDBMetaData());
+        String key = ValidationResultCache.getKey(overlayKey.toString());
+        ValidationResult result = cache.get(key);
+        if (result == null) {
+            ModelMetaData m = new ModelMetaData();
+            m.setName(modelName);
+            MetadataFactory overlay = new MetadataFactory(preview.getName(), DefaultMetadataInstance.DEFAULT_VDB_VERSION, SystemMetadata.getInstance().getRuntimeTypeMap(),m);
+            QueryParser parser = QueryParser.getQueryParser();
+            for (String viewDdl : viewDdls) {
+                try {
+                    parser.parseDDL(overlay, viewDdl);
+                } catch (MetadataException e) {
+                    //not resolvable against, just as if it were excluded from the preview vdb
+                    KLog.getLogger().debug("Could not parse overlay view ddl", e); //$NON-NLS-1$
+                }
+            }
+            MetadataStore overlayStore = overlay.asMetadataStore();
+            resolveOverlay(preview.getVDBMetaData(), m, overlay, overlayStore);
+            result = doValidate(preview, ddl, false, overlayStore);
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Resolve the overlay views in dependency order.  Errors are not reported, an
+     * invalid overlay view is just not resolvable against.
+     */
+    private static void resolveOverlay(VDBMetaData vdb, ModelMetaData m, MetadataFactory overlay, MetadataStore overlayStore) {
+        TransformationMetadata qmi = vdb.getAttachment(TransformationMetadata.class);
+        ValidationMetadata metadata = new ValidationMetadata(qmi, null, overlayStore);
+        QueryParser parser = QueryParser.getQueryParser();
+        MetadataValidator validator = new MetadataValidator();
+        ValidatorReport report = new ValidatorReport();
+        for (Table view : getResolvingOrder(overlay.getSchema().getTables().values())) {
+            try {
+                validator.validate(vdb, m, view, report, metadata, overlay, parser);
+            } catch (RuntimeException e) {
+                KLog.getLogger().debug("Could not resolve overlay view %s", e, view.getFullName()); //$NON-NLS-1$
+            }
+        }
+    }
+
+    /**
+     * @return the views ordered so that each follows the views it selects from
+     */
+    static List<Table> getResolvingOrder(Collection<Table> views) {
+        Map<String, Table> byName = new HashMap<>();
+        for (Table view : views) {
+            byName.put(view.getName().toLowerCase(Locale.ROOT), view);
+            byName.put(view.getFullName().toLowerCase(Locale.ROOT), view);
+        }
+        Set<Table> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Table> result = new ArrayList<>(views.size());
+        for (Table view : views) {
+            addInResolvingOrder(view, byName, visited, result);
+        }
+        return result;
+    }
+
+    private static void addInResolvingOrder(Table view, Map<String, Table> byName, Set<Table> visited, List<Table> result) {
+        //also stops at a cycle, which will fail to resolve
+        if (!visited.add(view)) {
+            return;
+        }
+        if (view.getSelectTransformation() != null) {
+            try {
+                for (GroupSymbol group : GroupCollectorVisitor.getGroupsIgnoreInlineViews(
+                        QueryParser.getQueryParser().parseCommand(view.getSelectTransformation()), true)) {
+                    Table dependency = byName.get(group.getNonCorrelationName().toLowerCase(Locale.ROOT));
+                    if (dependency != null) {
+                        addInResolvingOrder(dependency, byName, visited, result);
+                    }
+                }
+            } catch (QueryParserException e) {
+                //will fail to resolve
+            }
+        }
+        result.add(view);
+    }
+
+    private ValidationResult doValidate(TeiidVdbImpl preview, String ddl, boolean parseOnly) {
+        return doValidate(preview, ddl, parseOnly, null);
+    }
+
+    private ValidationResult doValidate(TeiidVdbImpl preview, String ddl, boolean parseOnly, MetadataStore overlay) {
         QueryParser parser = QueryParser.getQueryParser();
 
         ModelMetaData m = new ModelMetaData();
@@ -529,24 +1031,12 @@ public class DefaultMetadataInstance implements MetadataInstance {
         }
 
         if (!parseOnly) {
-            if (preview == null || !preview.hasLoaded()) {
-                throw new KException("Preview VDB is not available");
-            }
             VDBMetaData vdb = preview.getVDBMetaData();
             TransformationMetadata qmi = preview.getVDBMetaData().getAttachment(TransformationMetadata.class);
 
             //create an metadata facade so we can find stuff that was parsed
-            CompositeMetadataStore compositeMetadataStore = new CompositeMetadataStore(mf.asMetadataStore());
-            BasicQueryMetadataWrapper wrapper = new BasicQueryMetadataWrapper(qmi) {
-                @Override
-                public Object getGroupID(String groupName) throws TeiidComponentException, QueryMetadataException {
-                    try {
-                        return super.getGroupID(groupName);
-                    } catch (QueryMetadataException e) {
-                        return compositeMetadataStore.findGroup(groupName);
-                    }
-                }
-            };
+            //and the views that are not deployed
+            ValidationMetadata wrapper = new ValidationMetadata(qmi, mf.asMetadataStore(), overlay);
 
             MetadataValidator validator = new MetadataValidator();
             for (AbstractMetadataRecord record : mf.getSchema().getResolvingOrder()) {
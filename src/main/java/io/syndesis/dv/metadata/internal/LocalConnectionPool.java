@@ -0,0 +1,356 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.metadata.internal;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.syndesis.dv.utils.KLog;
+
+/**
+ * A small pool of idle local connections for each vdb.  Using a local
+ * connection requires a full session login, which is avoided for
+ * connections that are reused.
+ * <br>
+ * The pool for a vdb must be evicted whenever the vdb is undeployed or
+ * redeployed.  Connections that are in use when the pool is evicted
+ * are closed rather than returned.
+ * <br>
+ * Session options set by a borrower are reset before a connection is
+ * returned.  A connection that executed anything other than a plain query,
+ * such as creating a temporary table, is closed instead so that no state
+ * is visible to the next borrower.
+ */
+class LocalConnectionPool {
+
+    interface ConnectionFactory {
+        Connection connect(String vdbName) throws SQLException;
+    }
+
+    private static class VdbPool {
+        private final Deque<Connection> idle = new ArrayDeque<>();
+        private boolean closed;
+
+        synchronized Connection poll() {
+            return idle.pollFirst();
+        }
+
+        /**
+         * @return true if the connection was added to the idle connections
+         */
+        synchronized boolean offer(Connection c, int maxIdle) {
+            if (closed || idle.size() >= maxIdle) {
+                return false;
+            }
+            idle.addFirst(c);
+            return true;
+        }
+
+        void close() {
+            Connection[] connections = null;
+            synchronized (this) {
+                closed = true;
+                connections = idle.toArray(new Connection[idle.size()]);
+                idle.clear();
+            }
+            for (Connection c : connections) {
+                closeQuietly(c);
+            }
+        }
+    }
+
+    /**
+     * Session options that a borrower may set, and the statement restoring
+     * the default.  Setting any other option prevents the connection from
+     * being reused.
+     */
+    private static final Map<String, String> RESETTABLE_OPTIONS = new HashMap<>();
+    static {
+        RESETTABLE_OPTIONS.put("SHOWPLAN", "SET SHOWPLAN OFF"); //$NON-NLS-1$ //$NON-NLS-2$
+        RESETTABLE_OPTIONS.put("NOEXEC", "SET NOEXEC OFF"); //$NON-NLS-1$ //$NON-NLS-2$
+        RESETTABLE_OPTIONS.put("PARTIALRESULTSMODE", "SET PARTIALRESULTSMODE false"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private static final Pattern SET_PATTERN = Pattern.compile("\\s*set\\s+(\\w+)\\b.*", //$NON-NLS-1$
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern QUERY_PATTERN = Pattern.compile("[\\s(]*(select|with|values|table)\\b.*", //$NON-NLS-1$
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern INTO_PATTERN = Pattern.compile("\\binto\\b", //$NON-NLS-1$
+            Pattern.CASE_INSENSITIVE);
+
+    private final ConcurrentHashMap<String, VdbPool> pools = new ConcurrentHashMap<>();
+    private final ConnectionFactory connectionFactory;
+    private final int maxIdlePerVdb;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    LocalConnectionPool(ConnectionFactory connectionFactory, int maxIdlePerVdb) {
+        this.connectionFactory = connectionFactory;
+        this.maxIdlePerVdb = maxIdlePerVdb;
+    }
+
+    /**
+     * Get a pooled connection.  Closing the returned connection will
+     * return it to the pool.
+     */
+    Connection getConnection(String vdbName) throws SQLException {
+        VdbPool pool = pools.computeIfAbsent(vdbName, k -> new VdbPool());
+        Connection c = null;
+        while ((c = pool.poll()) != null) {
+            if (!c.isClosed()) {
+                reused.incrementAndGet();
+                return wrap(pool, c);
+            }
+        }
+        c = connectionFactory.connect(vdbName);
+        created.incrementAndGet();
+        return wrap(pool, c);
+    }
+
+    /**
+     * Close the idle connections for the given vdb.  In use connections
+     * will be closed as they are released.
+     */
+    void evict(String vdbName) {
+        VdbPool pool = pools.remove(vdbName);
+        if (pool != null) {
+            evicted.incrementAndGet();
+            pool.close();
+        }
+    }
+
+    void close() {
+        for (String vdbName : pools.keySet()) {
+            evict(vdbName);
+        }
+    }
+
+    long getCreatedCount() {
+        return created.get();
+    }
+
+    long getReusedCount() {
+        return reused.get();
+    }
+
+    long getEvictedCount() {
+        return evicted.get();
+    }
+
+    int getIdleCount() {
+        int count = 0;
+        for (VdbPool pool : pools.values()) {
+            synchronized (pool) {
+                count += pool.idle.size();
+            }
+        }
+        return count;
+    }
+
+    private void release(VdbPool pool, Connection c, SessionState state) {
+        try {
+            if (state.reusable && !c.isClosed() && c.getAutoCommit()) {
+                resetOptions(c, state.options);
+                c.clearWarnings();
+                if (pool.offer(c, maxIdlePerVdb)) {
+                    return;
+                }
+            }
+        } catch (SQLException e) {
+            KLog.getLogger().debug("Not reusing connection: %s", e.getMessage()); //$NON-NLS-1$
+        }
+        closeQuietly(c);
+    }
+
+    /**
+     * Restore the defaults of the options set by the borrower
+     */
+    private static void resetOptions(Connection c, Set<String> options) throws SQLException {
+        if (options.isEmpty()) {
+            return;
+        }
+        try (Statement s = c.createStatement()) {
+            for (String option : options) {
+                s.execute(RESETTABLE_OPTIONS.get(option));
+            }
+        }
+    }
+
+    private static void closeQuietly(Connection c) {
+        try {
+            c.close();
+        } catch (SQLException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * Tracks the effect of the borrower's commands on the session
+     */
+    private static class SessionState {
+        private boolean reusable = true;
+        private final Set<String> options = new TreeSet<>();
+
+        synchronized void executing(String sql) {
+            if (sql == null) {
+                return;
+            }
+            Matcher m = SET_PATTERN.matcher(sql);
+            if (m.matches()) {
+                String option = m.group(1).toUpperCase(Locale.ROOT);
+                if (RESETTABLE_OPTIONS.containsKey(option)) {
+                    options.add(option);
+                } else {
+                    reusable = false;
+                }
+            } else if (!isPlainQuery(sql)) {
+                //temp tables, updates, procedures, etc. may leave state on the session
+                reusable = false;
+            }
+        }
+
+        synchronized void notReusable() {
+            reusable = false;
+        }
+    }
+
+    /**
+     * @return true if the sql is a query that leaves no state on the session
+     */
+    static boolean isPlainQuery(String sql) {
+        return QUERY_PATTERN.matcher(sql).matches() && !INTO_PATTERN.matcher(sql).find();
+    }
+
+    private Connection wrap(VdbPool pool, Connection c) {
+        SessionState state = new SessionState();
+        return (Connection)Proxy.newProxyInstance(LocalConnectionPool.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new InvocationHandler() {
+
+            private boolean released;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+                    throws Throwable {
+                switch (method.getName()) {
+                case "equals": //$NON-NLS-1$
+                    return proxy == args[0];
+                case "hashCode": //$NON-NLS-1$
+                    return System.identityHashCode(proxy);
+                case "close": //$NON-NLS-1$
+                    synchronized (this) {
+                        if (!released) {
+                            released = true;
+                            release(pool, c, state);
+                        }
+                    }
+                    return null;
+                case "isClosed": //$NON-NLS-1$
+                    synchronized (this) {
+                        if (released) {
+                            return true;
+                        }
+                    }
+                    break;
+                default:
+                    synchronized (this) {
+                        if (released) {
+                            throw new SQLException("Connection is closed"); //$NON-NLS-1$
+                        }
+                    }
+                }
+                switch (method.getName()) {
+                case "prepareStatement": //$NON-NLS-1$
+                    state.executing((String)args[0]);
+                    break;
+                case "prepareCall": //$NON-NLS-1$
+                case "setCatalog": //$NON-NLS-1$
+                case "setSchema": //$NON-NLS-1$
+                case "setClientInfo": //$NON-NLS-1$
+                case "setReadOnly": //$NON-NLS-1$
+                case "setTransactionIsolation": //$NON-NLS-1$
+                case "setTypeMap": //$NON-NLS-1$
+                    state.notReusable();
+                    break;
+                default:
+                    break;
+                }
+                Object result = delegate(c, method, args);
+                if (result instanceof Statement) {
+                    return wrapStatement((Connection)proxy, (Statement)result, method.getReturnType(), state);
+                }
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Wrap the statement so that the sql it executes is seen by the session state
+     */
+    private static Statement wrapStatement(Connection connection, Statement s, Class<?> type, SessionState state) {
+        return (Statement)Proxy.newProxyInstance(LocalConnectionPool.class.getClassLoader(),
+                new Class<?>[] {type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "equals": //$NON-NLS-1$
+                return proxy == args[0];
+            case "hashCode": //$NON-NLS-1$
+                return System.identityHashCode(proxy);
+            case "getConnection": //$NON-NLS-1$
+                return connection;
+            case "addBatch": //$NON-NLS-1$
+            case "execute": //$NON-NLS-1$
+            case "executeQuery": //$NON-NLS-1$
+            case "executeUpdate": //$NON-NLS-1$
+            case "executeLargeUpdate": //$NON-NLS-1$
+                if (args != null && args.length > 0 && args[0] instanceof String) {
+                    state.executing((String)args[0]);
+                }
+                break;
+            default:
+                break;
+            }
+            return delegate(s, method, args);
+        });
+    }
+
+    private static Object delegate(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+}
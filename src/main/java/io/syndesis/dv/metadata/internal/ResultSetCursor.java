@@ -0,0 +1,174 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.metadata.internal;
+
+import java.io.IOException;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.teiid.api.exception.query.FunctionExecutionException;
+import org.teiid.core.types.ArrayImpl;
+import org.teiid.core.types.TransformationException;
+import org.teiid.core.types.basic.ClobToStringTransform;
+import org.teiid.jdbc.TeiidStatement;
+import org.teiid.query.function.GeometryUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.syndesis.dv.KException;
+import io.syndesis.dv.metadata.query.QSColumn;
+import io.syndesis.dv.metadata.query.QSCursor;
+import io.syndesis.dv.metadata.query.QSLob;
+import io.syndesis.dv.metadata.query.QSLobStore;
+import io.syndesis.dv.metadata.query.QSOptions;
+import io.syndesis.dv.metadata.query.QSRow;
+import io.syndesis.dv.utils.KLog;
+
+/**
+ * {@link QSCursor} over an open Teiid {@link ResultSet}.  Owns the
+ * statement and connection.
+ */
+class ResultSetCursor implements QSCursor {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Connection connection;
+    private final Statement statement;
+    private final ResultSet rs;
+    private final List<QSColumn> columns;
+    private final QSOptions options;
+    private boolean closed;
+
+    ResultSetCursor(Connection connection, Statement statement, ResultSet rs, QSOptions options) throws SQLException {
+        this.connection = connection;
+        this.statement = statement;
+        this.rs = rs;
+        this.options = options;
+
+        ResultSetMetaData rsmd = rs.getMetaData();
+        int columnCount = rsmd.getColumnCount();
+        List<QSColumn> cols = new ArrayList<>(columnCount);
+        for (int i = 1; i <= columnCount; ++i) {
+            String columnName = rsmd.getColumnName(i);
+            String columnLabel = rsmd.getColumnLabel(i);
+            String colTypeName = rsmd.getColumnTypeName(i);
+            cols.add(new QSColumn(colTypeName, columnName, columnLabel));
+        }
+        this.columns = Collections.unmodifiableList(cols);
+    }
+
+    @Override
+    public List<QSColumn> getColumns() {
+        return columns;
+    }
+
+    @Override
+    public QSRow next() throws KException {
+        try {
+            if (closed || !rs.next()) {
+                return null;
+            }
+            QSRow row = new QSRow();
+            for (int i = 1; i <= columns.size(); ++i) {
+                row.add(convertValue(rs.getObject(i), options.getLobStore()));
+            }
+            return row;
+        } catch (SQLException | IOException | FunctionExecutionException | TransformationException e) {
+            throw new KException(e);
+        }
+    }
+
+    /**
+     * Convert a value to something suitable for a json response
+     * @param lobStore if not null large objects are spooled to the store and
+     * a reference returned rather than a placeholder - unless the store has
+     * no room for the value
+     */
+    static Object convertValue(Object value, QSLobStore lobStore) throws SQLException, IOException,
+            FunctionExecutionException, TransformationException {
+        if (value instanceof ArrayImpl) {
+            return MAPPER.writeValueAsString(((ArrayImpl)value).getArray());
+        } else if (value instanceof org.teiid.core.types.AbstractGeospatialType) {
+            //checked before blob as the geospatial types are blobs
+            Clob clob = GeometryUtils.geometryToClob((org.teiid.core.types.AbstractGeospatialType)value, true);
+            if (lobStore != null) {
+                QSLob lob = lobStore.store(clob);
+                if (lob != null) {
+                    return lob;
+                }
+            }
+            ClobToStringTransform transform = new ClobToStringTransform();
+            return transform.transform(clob, String.class);
+        } else if (value instanceof java.sql.Blob) {
+            if (lobStore != null) {
+                QSLob lob = lobStore.store((java.sql.Blob)value);
+                if (lob != null) {
+                    return lob;
+                }
+            }
+            return QSLob.BLOB;
+        }  else if (value instanceof java.sql.Clob) {
+            if (lobStore != null) {
+                QSLob lob = lobStore.store((java.sql.Clob)value);
+                if (lob != null) {
+                    return lob;
+                }
+            }
+            return QSLob.CLOB;
+        }
+        return value;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            rs.close();
+        } catch (SQLException e) {
+            // ignore
+        }
+        if (options.isShowPlan()) {
+            try {
+                options.setPlanDescription(statement.unwrap(TeiidStatement.class).getPlanDescription());
+            } catch (SQLException e) {
+                KLog.getLogger().debug("Could not obtain the query plan", e); //$NON-NLS-1$
+            }
+        }
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // ignore
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // ignore
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.metadata.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.teiid.adminapi.impl.ModelMetaData;
+import org.teiid.adminapi.impl.ModelMetaData.Message;
+import org.teiid.adminapi.impl.ModelMetaData.Message.Severity;
+import org.teiid.adminapi.impl.VDBMetaData;
+
+/**
+ * An immutable index of the paths of the objects with validation errors, by model.
+ * <br>
+ * It is built once the vdb has finished deploying and is kept as an attachment
+ * of the vdb, see {@link #get(VDBMetaData)}
+ */
+final class ValidationErrorIndex {
+
+    private final Map<String, Set<String>> errorPaths;
+
+    private ValidationErrorIndex(Map<String, Set<String>> errorPaths) {
+        this.errorPaths = errorPaths;
+    }
+
+    static ValidationErrorIndex build(VDBMetaData vdb) {
+        Map<String, Set<String>> errorPaths = new HashMap<>();
+        for (ModelMetaData model : vdb.getModelMetaDatas().values()) {
+            Set<String> paths = new HashSet<>();
+            for (Message message : model.getMessages()) {
+                if (message.getPath() != null && message.getSeverity() == Severity.ERROR) {
+                    paths.add(message.getPath());
+                }
+            }
+            if (!paths.isEmpty()) {
+                errorPaths.put(model.getName(), Collections.unmodifiableSet(paths));
+            }
+        }
+        return new ValidationErrorIndex(Collections.unmodifiableMap(errorPaths));
+    }
+
+    /**
+     * Build and attach the index to the vdb
+     */
+    static ValidationErrorIndex attach(VDBMetaData vdb) {
+        ValidationErrorIndex index = build(vdb);
+        vdb.addAttchment(ValidationErrorIndex.class, index);
+        return index;
+    }
+
+    /**
+     * Get the index attached to the vdb, which is built if the vdb was deployed
+     * without the index being attached
+     */
+    static ValidationErrorIndex get(VDBMetaData vdb) {
+        ValidationErrorIndex index = vdb.getAttachment(ValidationErrorIndex.class);
+        if (index == null) {
+            index = attach(vdb);
+        }
+        return index;
+    }
+
+    boolean hasError(String modelName, String path) {
+        Set<String> paths = errorPaths.get(modelName);
+        return paths != null && paths.contains(path);
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.metadata.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.teiid.adminapi.impl.VDBMetaData;
+
+import com.google.common.hash.Hashing;
+
+import io.syndesis.dv.metadata.MetadataInstance.ValidationResult;
+
+/**
+ * A bounded LRU cache of {@link ValidationResult}s keyed by a hash of the ddl,
+ * so that repeated parsing / validation of unchanged ddl is skipped.
+ * <br>
+ * Validation results depend upon the preview vdb, so a cache for them is kept
+ * as an attachment of the preview vdb, see {@link #forVdb(VDBMetaData)}.
+ * A redeployment starts with an empty cache, and an in place update of the
+ * views must {@link #reset(VDBMetaData)} it.
+ * <br>
+ * The results are shared and must not be modified.
+ */
+final class ValidationResultCache {
+
+    /**
+     * The number of validation results to keep for each preview vdb
+     */
+    static final int MAX_VALIDATION_ENTRIES = 64;
+
+    private final int maxEntries;
+    private final Map<String, ValidationResult> entries = new LinkedHashMap<>(16, .75f, true);
+
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+
+    ValidationResultCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    static ValidationResultCache forVdb(VDBMetaData vdb) {
+        ValidationResultCache cache = vdb.getAttachment(ValidationResultCache.class);
+        if (cache == null) {
+            //a concurrent creation just loses some entries
+            cache = new ValidationResultCache(MAX_VALIDATION_ENTRIES);
+            vdb.addAttchment(ValidationResultCache.class, cache);
+        }
+        return cache;
+    }
+
+    static String getKey(String ddl) {
+        return Hashing.sha256().hashString(ddl, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Start a new cache for the vdb, as its metadata has changed in place
+     */
+    static void reset(VDBMetaData vdb) {
+        vdb.addAttchment(ValidationResultCache.class, new ValidationResultCache(MAX_VALIDATION_ENTRIES));
+    }
+
+    ValidationResult get(String key) {
+        ValidationResult result = null;
+        synchronized (this) {
+            result = entries.get(key);
+        }
+        if (result == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return result;
+    }
+
+    synchronized void put(String key, ValidationResult result) {
+        entries.put(key, result);
+        while (entries.size() > maxEntries) {
+            entries.remove(entries.keySet().iterator().next());
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.metadata.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.syndesis.dv.StringConstants;
+
+/**
+ * Deployment timings and counts of the embedded vdbs by kind - connection,
+ * preview, or the master preview.
+ * <br>
+ * The timers are histograms and only record once bound to a registry,
+ * the counts are kept from startup.
+ */
+class VdbDeploymentMetrics {
+
+    static final String CONNECTION = "connection"; //$NON-NLS-1$
+    static final String PREVIEW = "preview"; //$NON-NLS-1$
+    static final String MASTER = "master"; //$NON-NLS-1$
+    static final String OTHER = "other"; //$NON-NLS-1$
+
+    private static class KindStats {
+        final AtomicLong deploys = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong undeploys = new AtomicLong();
+        volatile Timer deployTimer;
+        volatile Timer loadTimer;
+        volatile Timer undeployTimer;
+    }
+
+    private final Map<String, KindStats> stats = new LinkedHashMap<>();
+
+    /**
+     * vdb name to when its metadata load started
+     */
+    private final Map<String, Long> loadStarts = new ConcurrentHashMap<>();
+
+    VdbDeploymentMetrics() {
+        for (String kind : new String[] {CONNECTION, PREVIEW, MASTER, OTHER}) {
+            stats.put(kind, new KindStats());
+        }
+    }
+
+    /**
+     * Determine the kind from the vdb naming conventions
+     */
+    static String getKind(String vdbName) {
+        if (StringConstants.PREVIEW_VDB.equals(vdbName)) {
+            return MASTER;
+        }
+        if (vdbName.endsWith(StringConstants.CONNECTION_VDB_SUFFIX)
+                || vdbName.endsWith(StringConstants.CONNECTION_VDB_SUFFIX + StringConstants.LOAD_VDB_SUFFIX)) {
+            return CONNECTION;
+        }
+        if (vdbName.endsWith(StringConstants.SERVICE_VDB_SUFFIX)) {
+            return PREVIEW;
+        }
+        return OTHER;
+    }
+
+    private KindStats getStats(String vdbName) {
+        return stats.get(getKind(vdbName));
+    }
+
+    void deployed(String vdbName, long startNanos, boolean failed) {
+        KindStats kindStats = getStats(vdbName);
+        kindStats.deploys.incrementAndGet();
+        if (failed) {
+            kindStats.failures.incrementAndGet();
+        }
+        record(kindStats.deployTimer, startNanos);
+    }
+
+    void undeployed(String vdbName, long startNanos) {
+        KindStats kindStats = getStats(vdbName);
+        kindStats.undeploys.incrementAndGet();
+        record(kindStats.undeployTimer, startNanos);
+    }
+
+    void loadStarted(String vdbName) {
+        loadStarts.put(vdbName, System.nanoTime());
+    }
+
+    void loadFinished(String vdbName, boolean failed) {
+        Long start = loadStarts.remove(vdbName);
+        KindStats kindStats = getStats(vdbName);
+        if (failed) {
+            kindStats.failures.incrementAndGet();
+        }
+        if (start != null) {
+            record(kindStats.loadTimer, start);
+        }
+    }
+
+    void removed(String vdbName) {
+        loadStarts.remove(vdbName);
+    }
+
+    private static void record(Timer timer, long startNanos) {
+        if (timer != null) {
+            timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    long getDeployCount(String kind) {
+        return stats.get(kind).deploys.get();
+    }
+
+    long getFailureCount(String kind) {
+        return stats.get(kind).failures.get();
+    }
+
+    long getUndeployCount(String kind) {
+        return stats.get(kind).undeploys.get();
+    }
+
+    void bindTo(MeterRegistry registry) {
+        for (Map.Entry<String, KindStats> entry : stats.entrySet()) {
+            String kind = entry.getKey();
+            KindStats kindStats = entry.getValue();
+            kindStats.deployTimer = Timer.builder("dv.vdb.deploy") //$NON-NLS-1$
+                .tag("kind", kind) //$NON-NLS-1$
+                .description("time to deploy a vdb") //$NON-NLS-1$
+                .publishPercentileHistogram()
+                .register(registry);
+            kindStats.loadTimer = Timer.builder("dv.vdb.load") //$NON-NLS-1$
+                .tag("kind", kind) //$NON-NLS-1$
+                .description("time from a vdb being added until its metadata has loaded") //$NON-NLS-1$
+                .publishPercentileHistogram()
+                .register(registry);
+            kindStats.undeployTimer = Timer.builder("dv.vdb.undeploy") //$NON-NLS-1$
+                .tag("kind", kind) //$NON-NLS-1$
+                .description("time to undeploy a vdb") //$NON-NLS-1$
+                .register(registry);
+            FunctionCounter.builder("dv.vdb.deploys", kindStats, s -> s.deploys.get()) //$NON-NLS-1$
+                .tag("kind", kind) //$NON-NLS-1$
+                .description("vdb deployments") //$NON-NLS-1$
+                .register(registry);
+            FunctionCounter.builder("dv.vdb.deploy.failures", kindStats, s -> s.failures.get()) //$NON-NLS-1$
+                .tag("kind", kind) //$NON-NLS-1$
+                .description("vdb deployments or metadata loads that failed") //$NON-NLS-1$
+                .register(registry);
+            FunctionCounter.builder("dv.vdb.undeploys", kindStats, s -> s.undeploys.get()) //$NON-NLS-1$
+                .tag("kind", kind) //$NON-NLS-1$
+                .description("vdb undeployments") //$NON-NLS-1$
+                .register(registry);
+        }
+    }
+
+}
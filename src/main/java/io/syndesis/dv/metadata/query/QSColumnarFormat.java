@@ -0,0 +1,337 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.metadata.query;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact, typed, column batch encoding of query results.
+ * <br>
+ * All values are big endian:
+ * <pre>
+ * header:  'D' 'V' 'C' version(byte)
+ *          column count(int)
+ *          per column: type code(byte) name(string) label(string) type name(string)
+ * batches: row count(int) - 0 marks the end of the results
+ *          per column: null bitmap of (row count + 7)/8 bytes, a set bit is null
+ *                      the non-null values, encoded by the column type code
+ * string:  byte length(int), -1 for null, followed by the utf-8 bytes
+ * </pre>
+ * Values are encoded per {@link ColumnType}.  Date, time and timestamp values
+ * are epoch milliseconds, with timestamps followed by the nanos(int).
+ */
+public final class QSColumnarFormat {
+
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = {'D', 'V', 'C'};
+
+    public enum ColumnType {
+        STRING,
+        BOOLEAN,
+        BYTE,
+        SHORT,
+        INTEGER,
+        LONG,
+        FLOAT,
+        DOUBLE,
+        BIGINTEGER,
+        BIGDECIMAL,
+        DATE,
+        TIME,
+        TIMESTAMP,
+        BINARY;
+
+        /**
+         * @param typeName the runtime type name from the result set metadata
+         * @return the encoding type, anything non-primitive is sent as a string
+         */
+        public static ColumnType forTypeName(String typeName) {
+            if (typeName == null) {
+                return STRING;
+            }
+            switch (typeName.toLowerCase()) {
+            case "boolean": //$NON-NLS-1$
+                return BOOLEAN;
+            case "byte": //$NON-NLS-1$
+            case "tinyint": //$NON-NLS-1$
+                return BYTE;
+            case "short": //$NON-NLS-1$
+            case "smallint": //$NON-NLS-1$
+                return SHORT;
+            case "integer": //$NON-NLS-1$
+                return INTEGER;
+            case "long": //$NON-NLS-1$
+            case "bigint": //$NON-NLS-1$
+                return LONG;
+            case "float": //$NON-NLS-1$
+            case "real": //$NON-NLS-1$
+                return FLOAT;
+            case "double": //$NON-NLS-1$
+                return DOUBLE;
+            case "biginteger": //$NON-NLS-1$
+                return BIGINTEGER;
+            case "bigdecimal": //$NON-NLS-1$
+            case "decimal": //$NON-NLS-1$
+                return BIGDECIMAL;
+            case "date": //$NON-NLS-1$
+                return DATE;
+            case "time": //$NON-NLS-1$
+                return TIME;
+            case "timestamp": //$NON-NLS-1$
+                return TIMESTAMP;
+            case "varbinary": //$NON-NLS-1$
+                return BINARY;
+            default:
+                return STRING;
+            }
+        }
+    }
+
+    /**
+     * Writes the header, then each batch of rows
+     */
+    public static class Writer {
+        private final DataOutputStream out;
+        private ColumnType[] types;
+
+        public Writer(OutputStream out) {
+            this.out = new DataOutputStream(new BufferedOutputStream(out));
+        }
+
+        public void writeHeader(List<QSColumn> columns) throws IOException {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(columns.size());
+            types = new ColumnType[columns.size()];
+            for (int i = 0; i < types.length; i++) {
+                QSColumn column = columns.get(i);
+                types[i] = ColumnType.forTypeName(column.getType());
+                out.writeByte(types[i].ordinal());
+                writeString(column.getName());
+                writeString(column.getLabel());
+                writeString(column.getType());
+            }
+        }
+
+        public void writeBatch(List<QSRow> rows) throws IOException {
+            if (rows.isEmpty()) {
+                return;
+            }
+            out.writeInt(rows.size());
+            byte[] nulls = new byte[(rows.size() + 7)/8];
+            for (int col = 0; col < types.length; col++) {
+                Arrays.fill(nulls, (byte)0);
+                for (int row = 0; row < rows.size(); row++) {
+                    if (rows.get(row).getRow().get(col) == null) {
+                        nulls[row >> 3] |= 1 << (row & 7);
+                    }
+                }
+                out.write(nulls);
+                for (QSRow row : rows) {
+                    Object value = row.getRow().get(col);
+                    if (value != null) {
+                        writeValue(types[col], value);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Write the end marker and flush
+         */
+        public void finish() throws IOException {
+            out.writeInt(0);
+            out.flush();
+        }
+
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        private void writeValue(ColumnType type, Object value) throws IOException {
+            switch (type) {
+            case BOOLEAN:
+                out.writeBoolean((Boolean)value);
+                break;
+            case BYTE:
+                out.writeByte(((Number)value).byteValue());
+                break;
+            case SHORT:
+                out.writeShort(((Number)value).shortValue());
+                break;
+            case INTEGER:
+                out.writeInt(((Number)value).intValue());
+                break;
+            case LONG:
+                out.writeLong(((Number)value).longValue());
+                break;
+            case FLOAT:
+                out.writeFloat(((Number)value).floatValue());
+                break;
+            case DOUBLE:
+                out.writeDouble(((Number)value).doubleValue());
+                break;
+            case DATE:
+            case TIME:
+                out.writeLong(((java.util.Date)value).getTime());
+                break;
+            case TIMESTAMP:
+                Timestamp ts = (Timestamp)value;
+                out.writeLong(ts.getTime());
+                out.writeInt(ts.getNanos());
+                break;
+            case BINARY:
+                if (value instanceof byte[]) {
+                    byte[] bytes = (byte[])value;
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                    break;
+                }
+                writeString(value.toString());
+                break;
+            default:
+                writeString(value.toString());
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads the full results.  Intended for tooling and tests.
+     */
+    public static QSResult read(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException("Not a columnar result"); //$NON-NLS-1$
+        }
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version); //$NON-NLS-1$
+        }
+        QSResult result = new QSResult();
+        ColumnType[] types = new ColumnType[in.readInt()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = ColumnType.values()[in.readByte()];
+            String name = readString(in);
+            String label = readString(in);
+            String typeName = readString(in);
+            result.addColumn(new QSColumn(typeName, name, label));
+        }
+        int rowCount = 0;
+        while ((rowCount = in.readInt()) > 0) {
+            List<List<Object>> columnValues = new ArrayList<>(types.length);
+            byte[] nulls = new byte[(rowCount + 7)/8];
+            for (int col = 0; col < types.length; col++) {
+                in.readFully(nulls);
+                List<Object> values = new ArrayList<>(rowCount);
+                for (int row = 0; row < rowCount; row++) {
+                    if ((nulls[row >> 3] & (1 << (row & 7))) != 0) {
+                        values.add(null);
+                    } else {
+                        values.add(readValue(in, types[col]));
+                    }
+                }
+                columnValues.add(values);
+            }
+            for (int row = 0; row < rowCount; row++) {
+                QSRow qsRow = new QSRow();
+                for (List<Object> values : columnValues) {
+                    qsRow.add(values.get(row));
+                }
+                result.addRow(qsRow);
+            }
+        }
+        return result;
+    }
+
+    private static Object readValue(DataInputStream in, ColumnType type) throws IOException {
+        switch (type) {
+        case BOOLEAN:
+            return in.readBoolean();
+        case BYTE:
+            return in.readByte();
+        case SHORT:
+            return in.readShort();
+        case INTEGER:
+            return in.readInt();
+        case LONG:
+            return in.readLong();
+        case FLOAT:
+            return in.readFloat();
+        case DOUBLE:
+            return in.readDouble();
+        case BIGINTEGER:
+            return new BigInteger(readString(in));
+        case BIGDECIMAL:
+            return new BigDecimal(readString(in));
+        case DATE:
+            return new java.sql.Date(in.readLong());
+        case TIME:
+            return new java.sql.Time(in.readLong());
+        case TIMESTAMP:
+            Timestamp ts = new Timestamp(in.readLong());
+            ts.setNanos(in.readInt());
+            return ts;
+        case BINARY:
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return bytes;
+        default:
+            return readString(in);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private QSColumnarFormat() {
+    }
+
+}
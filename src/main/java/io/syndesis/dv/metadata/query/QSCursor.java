@@ -0,0 +1,50 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.metadata.query;
+
+import java.util.List;
+
+import io.syndesis.dv.KException;
+
+/**
+ * A forward only view over an executing query.  Rows are converted
+ * one at a time so that callers can process results without holding
+ * the full {@link QSResult} in memory.
+ * <br>
+ * The cursor holds the underlying connection and must be closed.
+ */
+public interface QSCursor extends AutoCloseable {
+
+    /**
+     * @return the result columns (never <code>null</code>)
+     */
+    List<QSColumn> getColumns();
+
+    /**
+     * @return the next row or <code>null</code> if there are no more rows
+     * @throws KException
+     */
+    QSRow next() throws KException;
+
+    /**
+     * Release the underlying statement and connection
+     */
+    @Override
+    void close();
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.metadata.query;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * A short-lived reference to a large object value that has been spooled
+ * from a query result.  The bytes are retrieved separately by id.
+ */
+@JsonSerialize(as = QSLob.class)
+@JsonInclude(Include.NON_NULL)
+public class QSLob {
+
+    public static final String BLOB = "blob"; //$NON-NLS-1$
+    public static final String CLOB = "clob"; //$NON-NLS-1$
+
+    private String lobId;
+
+    private String type;
+
+    private long length;
+
+    private boolean truncated;
+
+    protected QSLob() {
+    }
+
+    public QSLob(String lobId, String type, long length) {
+        this(lobId, type, length, false);
+    }
+
+    public QSLob(String lobId, String type, long length, boolean truncated) {
+        this.lobId = lobId;
+        this.type = type;
+        this.length = length;
+        this.truncated = truncated;
+    }
+
+    public String getLobId() {
+        return lobId;
+    }
+
+    /**
+     * @return {@link #BLOB} or {@link #CLOB}
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return the length in bytes - clobs are stored as UTF-8
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return true if only the leading {@link #getLength()} bytes of the
+     * value were stored
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public String toString() {
+        return lobId;
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.metadata.query;
+
+import java.io.IOException;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+
+/**
+ * Spools large object values from a result so that only a reference
+ * needs to be held in the result.
+ */
+public interface QSLobStore {
+
+    /**
+     * Copy the blob contents to the store
+     * @param blob
+     * @return the reference to the stored value, or null if the store has no
+     * room for it
+     */
+    QSLob store(Blob blob) throws SQLException, IOException;
+
+    /**
+     * Copy the clob contents to the store
+     * @param clob
+     * @return the reference to the stored value, or null if the store has no
+     * room for it
+     */
+    QSLob store(Clob clob) throws SQLException, IOException;
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.metadata.query;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.teiid.client.plan.PlanNode;
+
+/**
+ * Execution options for a single query.  Also serves as the handle to
+ * cancel the execution from another thread - even before the statement
+ * has been created.
+ */
+public class QSOptions {
+
+    private int fetchSize;
+    private int timeoutSeconds;
+    private boolean showPlan;
+    private QSLobStore lobStore;
+
+    private volatile PlanNode planDescription;
+
+    private Statement statement;
+    private boolean cancelled;
+
+    /**
+     * @param fetchSize the number of rows to fetch from the engine at a time, or 0 for the driver default
+     */
+    public QSOptions setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * @param timeoutSeconds the query timeout, or 0 for no timeout
+     */
+    public QSOptions setTimeoutSeconds(int timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+        return this;
+    }
+
+    public int getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    /**
+     * @param showPlan true if the query plan should be captured
+     */
+    public QSOptions setShowPlan(boolean showPlan) {
+        this.showPlan = showPlan;
+        return this;
+    }
+
+    public boolean isShowPlan() {
+        return showPlan;
+    }
+
+    /**
+     * @param lobStore the store for large object values, or null to
+     * return placeholders in their place
+     */
+    public QSOptions setLobStore(QSLobStore lobStore) {
+        this.lobStore = lobStore;
+        return this;
+    }
+
+    public QSLobStore getLobStore() {
+        return lobStore;
+    }
+
+    /**
+     * @return the query plan, available once the cursor has been closed if
+     * {@link #isShowPlan()}
+     */
+    public PlanNode getPlanDescription() {
+        return planDescription;
+    }
+
+    public void setPlanDescription(PlanNode planDescription) {
+        this.planDescription = planDescription;
+    }
+
+    /**
+     * Called with the statement prior to execution to apply the options
+     * @throws SQLException if the execution has already been cancelled
+     */
+    public void statementCreated(Statement s) throws SQLException {
+        if (fetchSize > 0) {
+            s.setFetchSize(fetchSize);
+        }
+        if (timeoutSeconds > 0) {
+            s.setQueryTimeout(timeoutSeconds);
+        }
+        synchronized (this) {
+            if (cancelled) {
+                throw new SQLException("Query cancelled"); //$NON-NLS-1$
+            }
+            this.statement = s;
+        }
+    }
+
+    /**
+     * Cancel the execution
+     * @throws SQLException
+     */
+    public void cancel() throws SQLException {
+        Statement s = null;
+        synchronized (this) {
+            cancelled = true;
+            s = statement;
+        }
+        if (s != null) {
+            s.cancel();
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+}
@@ -32,6 +32,10 @@ public class QSResult {
 
     private final List<QSRow> rows = new ArrayList<QSRow>();
 
+    private String cursorId;
+
+    private QSStatistics statistics;
+
     public List<QSColumn> getColumns() {
         return columns;
     }
@@ -48,4 +52,27 @@ public class QSResult {
         this.rows.add(row);
     }
 
+    /**
+     * @return the id of the open cursor to fetch the next page of results,
+     * or null if there are no more results
+     */
+    public String getCursorId() {
+        return cursorId;
+    }
+
+    public void setCursorId(String cursorId) {
+        this.cursorId = cursorId;
+    }
+
+    /**
+     * @return the execution statistics, or null if they were not requested
+     */
+    public QSStatistics getStatistics() {
+        return statistics;
+    }
+
+    public void setStatistics(QSStatistics statistics) {
+        this.statistics = statistics;
+    }
+
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.metadata.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.teiid.client.plan.PlanNode;
+import org.teiid.client.plan.PlanNode.Property;
+import org.teiid.query.analysis.AnalysisRecord;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Execution statistics of a single query.  All times are in milliseconds
+ * measured from the start of the execution.
+ */
+@JsonSerialize(as = QSStatistics.class)
+@JsonInclude(Include.NON_NULL)
+public class QSStatistics {
+
+    private long executionTime;
+
+    private long firstRowTime;
+
+    private long fetchTime;
+
+    private long rowCount;
+
+    private long bytes;
+
+    private String plan;
+
+    private List<String> pushdownQueries;
+
+    /**
+     * @return the time until the statement execution returned
+     */
+    public long getExecutionTime() {
+        return executionTime;
+    }
+
+    public void setExecutionTime(long executionTime) {
+        this.executionTime = executionTime;
+    }
+
+    /**
+     * @return the time until the first row was available
+     */
+    public long getFirstRowTime() {
+        return firstRowTime;
+    }
+
+    public void setFirstRowTime(long firstRowTime) {
+        this.firstRowTime = firstRowTime;
+    }
+
+    /**
+     * @return the time until all rows were read
+     */
+    public long getFetchTime() {
+        return fetchTime;
+    }
+
+    public void setFetchTime(long fetchTime) {
+        this.fetchTime = fetchTime;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public void setRowCount(long rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * @return the estimated size of the result rows
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return the Teiid query plan
+     */
+    public String getPlan() {
+        return plan;
+    }
+
+    public void setPlan(String plan) {
+        this.plan = plan;
+    }
+
+    /**
+     * @return the queries pushed down to the sources
+     */
+    public List<String> getPushdownQueries() {
+        return pushdownQueries;
+    }
+
+    public void setPushdownQueries(List<String> pushdownQueries) {
+        this.pushdownQueries = pushdownQueries;
+    }
+
+    /**
+     * Set the plan and the pushdown queries from the plan description
+     * @param planNode may be null if the plan was not available
+     */
+    public void setPlanDescription(PlanNode planNode) {
+        if (planNode == null) {
+            return;
+        }
+        this.plan = planNode.toString();
+        this.pushdownQueries = new ArrayList<>();
+        collectPushdownQueries(planNode, this.pushdownQueries);
+    }
+
+    private static void collectPushdownQueries(PlanNode node, List<String> queries) {
+        for (Property property : node.getProperties()) {
+            if (property.getPlanNode() != null) {
+                collectPushdownQueries(property.getPlanNode(), queries);
+            } else if (AnalysisRecord.PROP_SQL.equals(property.getName()) && property.getValues() != null) {
+                queries.addAll(property.getValues());
+            }
+        }
+    }
+
+}
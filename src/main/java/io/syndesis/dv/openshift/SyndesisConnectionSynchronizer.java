@@ -82,6 +82,7 @@ public class SyndesisConnectionSynchronizer {
         // Get syndesis sources
         Collection<DefaultSyndesisDataSource> dataSources = openshiftClient.getSyndesisSources();
         synchronizeConnections(update, dataSources);
+        this.metadataService.sourcesSynchronized();
     }
 
     public void synchronizeConnections(boolean update,
@@ -44,4 +44,10 @@ public interface DataVirtualizationRepository extends JpaRepository<DataVirtuali
     @Query("from DataVirtualization dv where dv.upperName = UPPER(:dvName)")
     public DataVirtualization findByNameIgnoreCase(@Param("dvName") String dvName);
 
+    @Query("select dv.name, dv.version from DataVirtualization dv")
+    public List<Object[]> findNamesAndVersions();
+
+    @Query(value = "SELECT name FROM data_virtualization where type = 'v' order by modified_at desc, name limit :limit", nativeQuery = true)
+    public List<String> findNamesOrderByModifiedAtDesc(@Param("limit") int limit);
+
 }
@@ -18,12 +18,20 @@
 
 package io.syndesis.dv.repository;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 import io.syndesis.dv.utils.KLog;
+import io.syndesis.dv.utils.PathUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.util.Pair;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
@@ -155,6 +163,20 @@ public class RepositoryManagerImpl implements RepositoryManager {
         return dataVirtualizationRepository.findNamesByTypeLike("v"); //$NON-NLS-1$
     }
 
+    @Override
+    public Map<String, Long> findDataVirtualizationVersions() {
+        Map<String, Long> result = new HashMap<>();
+        for (Object[] nameAndVersion : dataVirtualizationRepository.findNamesAndVersions()) {
+            result.put((String)nameAndVersion[0], (Long)nameAndVersion[1]);
+        }
+        return result;
+    }
+
+    @Override
+    public List<String> findRecentlyModifiedDataVirtualizationNames(int limit) {
+        return dataVirtualizationRepository.findNamesOrderByModifiedAtDesc(limit);
+    }
+
     @Override
     public boolean deleteDataVirtualization(String serviceName) {
         io.syndesis.dv.model.DataVirtualization dv = this.dataVirtualizationRepository.findByName(serviceName);
@@ -171,6 +193,41 @@ public class RepositoryManagerImpl implements RepositoryManager {
         return this.viewDefinitionRepository.saveAll(entities);
     }
 
+    @Override
+    public void updateViewDependencies(ViewDefinition viewDefinition, Collection<String> sourcePaths) {
+        this.viewDefinitionRepository.deleteDependencies(viewDefinition.getId());
+        Set<Pair<String, String>> tables = new LinkedHashSet<>();
+        for (String path : sourcePaths) {
+            //format is schema=x/table=y
+            List<Pair<String, String>> options = PathUtils.getOptions(path);
+            if (options.size() < 2) {
+                LOGGER.debug("Ignoring the source path %s of view %s", path, viewDefinition.getName()); //$NON-NLS-1$
+                continue;
+            }
+            tables.add(Pair.of(options.get(0).getSecond(), options.get(1).getSecond()));
+        }
+        for (Pair<String, String> table : tables) {
+            this.viewDefinitionRepository.insertDependency(viewDefinition.getId(),
+                    viewDefinition.getDataVirtualizationName(), table.getFirst(), table.getSecond());
+        }
+    }
+
+    @Override
+    public List<String> findDataVirtualizationNamesBySchemaNames(Collection<String> schemaNames) {
+        if (schemaNames.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return this.viewDefinitionRepository.findDataVirtualizationNamesBySchemaNames(schemaNames);
+    }
+
+    @Override
+    public List<ViewDefinition> findViewDefinitionsBySourceTable(String schemaName, String tableName) {
+        if (tableName == null) {
+            return this.viewDefinitionRepository.findAllBySchemaName(schemaName);
+        }
+        return this.viewDefinitionRepository.findAllBySchemaNameAndTableName(schemaName, tableName);
+    }
+
     @Override
     public io.syndesis.dv.model.ViewDefinition createViewDefiniton(String dvName, String viewName) {
         io.syndesis.dv.model.ViewDefinition viewEditorState = new io.syndesis.dv.model.ViewDefinition(dvName, viewName);
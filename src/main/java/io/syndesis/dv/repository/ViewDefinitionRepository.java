@@ -18,9 +18,11 @@
 
 package io.syndesis.dv.repository;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -38,4 +40,23 @@ public interface ViewDefinitionRepository extends JpaRepository<ViewDefinition,
     @Query(value = "SELECT name FROM view_definition WHERE dv_name = ?1", nativeQuery = true)
     public List<String> findAllNamesByDataVirtualizationName(String dvName);
 
+    @Modifying
+    @Query(value = "DELETE FROM view_dependency WHERE view_id = ?1", nativeQuery = true)
+    public int deleteDependencies(String viewId);
+
+    @Modifying
+    @Query(value = "INSERT INTO view_dependency (view_id, dv_name, schema_name, table_name) VALUES (?1, ?2, ?3, ?4)", nativeQuery = true)
+    public int insertDependency(String viewId, String dvName, String schemaName, String tableName);
+
+    @Query(value = "SELECT DISTINCT dv_name FROM view_dependency WHERE schema_name IN ?1", nativeQuery = true)
+    public List<String> findDataVirtualizationNamesBySchemaNames(Collection<String> schemaNames);
+
+    @Query(value = "SELECT vd.* FROM view_definition vd WHERE vd.id IN "
+            + "(SELECT d.view_id FROM view_dependency d WHERE d.schema_name = ?1)", nativeQuery = true)
+    public List<ViewDefinition> findAllBySchemaName(String schemaName);
+
+    @Query(value = "SELECT vd.* FROM view_definition vd WHERE vd.id IN "
+            + "(SELECT d.view_id FROM view_dependency d WHERE d.schema_name = ?1 AND d.table_name = ?2)", nativeQuery = true)
+    public List<ViewDefinition> findAllBySchemaNameAndTableName(String schemaName, String tableName);
+
 }
@@ -90,6 +90,11 @@ public interface V1Constants extends StringConstants {
      */
     String EDITORS_SEGMENT = "editors"; //$NON-NLS-1$
 
+    /**
+     * Validate all of the view definitions of a virtualization
+     */
+    String VALIDATE_SEGMENT = "validate"; //$NON-NLS-1$
+
     /**
      * The name of the URI path segment for the metadata service.
      */
@@ -114,6 +119,11 @@ public interface V1Constants extends StringConstants {
      */
     String REFRESH_SCHEMA_SEGMENT = "refreshSchema"; //$NON-NLS-1$
 
+    /**
+     * The name of the URI path segment for the views affected by a source
+     */
+    String IMPACT_SEGMENT = "impact"; //$NON-NLS-1$
+
     /**
      * The name of the URI path segment for the collection of views of a vdb model
      */
@@ -133,6 +143,42 @@ public interface V1Constants extends StringConstants {
      */
     String QUERY_SEGMENT = "query"; //$NON-NLS-1$
 
+    /**
+     * The segment for open query cursors
+     */
+    String CURSORS_SEGMENT = "cursors"; //$NON-NLS-1$
+
+    /**
+     * The segment for asynchronous query jobs
+     */
+    String JOBS_SEGMENT = "jobs"; //$NON-NLS-1$
+
+    String JOB_ID = "jobId"; //$NON-NLS-1$
+
+    /**
+     * job id placeholder
+     */
+    String JOB_PLACEHOLDER = "{" + JOB_ID + "}"; //$NON-NLS-1$ //$NON-NLS-2$
+
+    String CURSOR_ID = "cursorId"; //$NON-NLS-1$
+
+    /**
+     * cursor id placeholder
+     */
+    String CURSOR_PLACEHOLDER = "{" + CURSOR_ID + "}"; //$NON-NLS-1$ //$NON-NLS-2$
+
+    /**
+     * The segment for spooled query result large objects
+     */
+    String LOBS_SEGMENT = "lobs"; //$NON-NLS-1$
+
+    String LOB_ID = "lobId"; //$NON-NLS-1$
+
+    /**
+     * lob id placeholder
+     */
+    String LOB_PLACEHOLDER = "{" + LOB_ID + "}"; //$NON-NLS-1$ //$NON-NLS-2$
+
     /**
      * syndesis source summaries segment
      */
@@ -162,6 +208,11 @@ public interface V1Constants extends StringConstants {
      */
     String RUNTIME_METADATA = "runtimeMetadata"; //$NON-NLS-1$
 
+    /**
+     * Deployment and metadata load status of a virtualization preview vdb
+     */
+    String PREVIEW_STATUS = "previewStatus"; //$NON-NLS-1$
+
     String VIRTUALIZATION = "virtualization"; //$NON-NLS-1$
 
     /**
@@ -169,4 +220,14 @@ public interface V1Constants extends StringConstants {
      */
     String VIRTUALIZATION_PLACEHOLDER = "{" + VIRTUALIZATION + "}"; //$NON-NLS-1$ //$NON-NLS-2$
 
+    /**
+     * Newline delimited json media type used for streaming query results
+     */
+    String APPLICATION_NDJSON_VALUE = "application/x-ndjson"; //$NON-NLS-1$
+
+    /**
+     * Media type for query results in the compact binary columnar format
+     */
+    String APPLICATION_COLUMNAR_VALUE = "application/vnd.syndesis.dv.columnar"; //$NON-NLS-1$
+
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import io.syndesis.dv.KException;
+import io.syndesis.dv.metadata.query.QSColumnarFormat;
+import io.syndesis.dv.metadata.query.QSCursor;
+import io.syndesis.dv.metadata.query.QSRow;
+
+/**
+ * Writes a {@link QSCursor} in the {@link QSColumnarFormat} one batch
+ * at a time.  The cursor is closed once written.
+ */
+public class ColumnarQueryResult implements StreamingResponseBody {
+
+    private final QSCursor cursor;
+    private final int batchSize;
+
+    public ColumnarQueryResult(QSCursor cursor, int batchSize) {
+        this.cursor = cursor;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        try (QSCursor c = cursor) {
+            QSColumnarFormat.Writer writer = new QSColumnarFormat.Writer(out);
+            writer.writeHeader(c.getColumns());
+
+            List<QSRow> batch = new ArrayList<>(batchSize);
+            QSRow row = null;
+            while ((row = c.next()) != null) {
+                batch.add(row);
+                if (batch.size() == batchSize) {
+                    writer.writeBatch(batch);
+                    writer.flush();
+                    batch.clear();
+                }
+            }
+            writer.writeBatch(batch);
+            writer.finish();
+        } catch (KException e) {
+            //the status has already been sent, so all we can do is abort the response
+            throw new IOException(e);
+        }
+    }
+
+}
@@ -114,6 +114,9 @@ public final class DataVirtualizationService extends DvService {
     @Autowired
     private EditorService utilService;
 
+    @Autowired
+    private VirtualizationVersionCache virtualizationVersionCache;
+
     /**
      * Get the virtualizations from the repository
      * @return a JSON document representing all the virtualizations
@@ -228,6 +231,7 @@ public final class DataVirtualizationService extends DvService {
             return repositoryManager.runInTransaction(false, () -> {
                 final DataVirtualization dv = getWorkspaceManager().createDataVirtualization(restName);
                 dv.setDescription(restDataVirtualization.getDescription());
+                virtualizationVersionCache.invalidate(restName);
                 return ResponseEntity.ok(restName + " Successfully created");
             });
         } catch (DataIntegrityViolationException e) {
@@ -254,6 +258,7 @@ public final class DataVirtualizationService extends DvService {
             if (!repositoryManager.deleteDataVirtualization(virtualization)) {
                 throw notFound(virtualization);
             }
+            virtualizationVersionCache.invalidate(virtualization);
 
             StatusObject status = new StatusObject("Delete Status"); //$NON-NLS-1$
             status.addAttribute(virtualization, "Successfully deleted"); //$NON-NLS-1$
@@ -362,9 +367,11 @@ public final class DataVirtualizationService extends DvService {
 
             for (ViewDefinition vd : getWorkspaceManager().saveAllViewDefinitions(toSave)) {
                 result.addAttribute(vd.getName(), vd.getId());
+                getWorkspaceManager().updateViewDependencies(vd, vd.getSourcePaths());
             }
 
             dataservice.setModifiedAt(null);
+            virtualizationVersionCache.invalidate(virtualization);
 
             return result;
         });
@@ -701,6 +708,7 @@ public final class DataVirtualizationService extends DvService {
     @RequestMapping(value = V1Constants.PUBLISH, method = RequestMethod.POST, produces = { MediaType.APPLICATION_JSON_VALUE })
     @ApiOperation(value = "Publish Virtualization Service", response = StatusObject.class)
     @ApiResponses(value = {
+        @ApiResponse(code = 202, message = "The preview vdb is loading, poll the location for its status", response = RestPreviewVdbStatus.class),
         @ApiResponse(code = 404, message = "No Dataservice could be found with name"),
         @ApiResponse(code = 406, message = "Only JSON returned by this operation"),
         @ApiResponse(code = 403, message = "An error has occurred.")
@@ -727,11 +735,7 @@ public final class DataVirtualizationService extends DvService {
                 throw notFound(payload.getName());
             }
 
-            TeiidVdb vdb = metadataService.updatePreviewVdb(dataservice.getName());
-
-            if (vdb == null || !vdb.hasLoaded()) {
-                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE);
-            }
+            TeiidVdb vdb = metadataService.getLoadedPreviewVdb(dataservice.getName());
 
             StatusObject status = new StatusObject();
 
@@ -0,0 +1,100 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import io.syndesis.dv.utils.KLog;
+
+/**
+ * Collapses bursts of requests to run a task into a single execution.
+ * <br>
+ * The task runs on the executor once no request has arrived for the window,
+ * but no later than the max delay after the first pending request so that a
+ * steady stream of requests can't postpone it indefinitely.  Requests arriving
+ * while the task runs schedule a subsequent execution.
+ */
+class DebouncedTask {
+
+    private static final KLog LOGGER = KLog.getLogger();
+
+    private final ScheduledExecutorService executor;
+    private final Runnable task;
+    private final long windowNanos;
+    private final long maxDelayNanos;
+
+    private boolean pending;
+    private long firstRequest;
+    private long lastRequest;
+
+    private long requestCount;
+    private long runCount;
+
+    DebouncedTask(ScheduledExecutorService executor, Runnable task, long windowMillis, long maxDelayMillis) {
+        this.executor = executor;
+        this.task = task;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(windowMillis, maxDelayMillis));
+    }
+
+    /**
+     * Request that the task be run
+     */
+    public synchronized void request() {
+        long now = System.nanoTime();
+        requestCount++;
+        lastRequest = now;
+        if (pending) {
+            //the scheduled check will account for this request
+            return;
+        }
+        pending = true;
+        firstRequest = now;
+        executor.schedule(this::check, windowNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void check() {
+        synchronized (this) {
+            long now = System.nanoTime();
+            long quiet = now - lastRequest;
+            long waiting = now - firstRequest;
+            if (quiet < windowNanos && waiting < maxDelayNanos) {
+                executor.schedule(this::check, Math.min(windowNanos - quiet, maxDelayNanos - waiting),
+                        TimeUnit.NANOSECONDS);
+                return;
+            }
+            pending = false;
+            runCount++;
+        }
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            LOGGER.error("Debounced task failed", e); //$NON-NLS-1$
+        }
+    }
+
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    public synchronized long getRunCount() {
+        return runCount;
+    }
+
+}
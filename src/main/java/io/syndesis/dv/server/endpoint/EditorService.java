@@ -17,8 +17,12 @@
  */
 package io.syndesis.dv.server.endpoint;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 
+import io.syndesis.dv.StringConstants;
 import io.syndesis.dv.metadata.MetadataInstance;
 import io.syndesis.dv.metadata.MetadataInstance.ValidationResult;
 import io.syndesis.dv.model.DataVirtualization;
@@ -61,7 +65,9 @@ public final class EditorService extends DvService {
 
     private static final String ERROR = "ERROR"; //$NON-NLS-1$
 
-    public static final String PREVIEW_VDB = "Preview"; //$NON-NLS-1$
+    private static final String PENDING = "PENDING"; //$NON-NLS-1$
+
+    public static final String PREVIEW_VDB = StringConstants.PREVIEW_VDB;
 
     @Autowired
     private MetadataInstance metadataInstance;
@@ -69,6 +75,9 @@ public final class EditorService extends DvService {
     @Autowired
     private MetadataService metadataService;
 
+    @Autowired
+    private VirtualizationVersionCache virtualizationVersionCache;
+
     /**
      * Get the view editor state with the given id from the user's profile
      * @return a JSON document representing the view editor state in the user profile (never <code>null</code>)
@@ -96,7 +105,7 @@ public final class EditorService extends DvService {
             LOGGER.debug("getViewEditorStates:ViewEditorState %s entity was constructed", viewEditorState.getName()); //$NON-NLS-1$
             //for consistency/simplicity, just call validate - but it would be cheaper to lookup the validation
             //off of the vdb.  This return effectively mixes in the status/viewdefinition
-            RestViewDefinitionStatus status = validateViewDefinition(viewEditorState);
+            RestViewDefinitionStatus status = validateOrPending(viewEditorState);
             status.setViewDefinition(viewEditorState);
             return status;
         });
@@ -127,7 +136,7 @@ public final class EditorService extends DvService {
         //validate before saving as it can save us a preview vdb refresh
         //TODO: further consolidation - that is we can go back to the logic that
         //had captured the inputs
-        RestViewDefinitionStatus validated = validateViewDefinition(restViewEditorState);
+        RestViewDefinitionStatus validated = validateOrPending(restViewEditorState);
 
         ViewDefinition vd = repositoryManager.runInTransaction(false, ()->{
             return upsertViewEditorState(restViewEditorState);
@@ -138,10 +147,92 @@ public final class EditorService extends DvService {
         return validated;
     }
 
+    /**
+     * Validate, or if the preview vdb is still loading return a pending status rather than
+     * holding up the read or save of the view definition
+     */
+    private RestViewDefinitionStatus validateOrPending(ViewDefinition viewDefinition) throws Exception {
+        try {
+            return validateViewDefinition(viewDefinition);
+        } catch (PreviewVdbLoadingException e) {
+            RestViewDefinitionStatus status = new RestViewDefinitionStatus(PENDING);
+            status.setMessage(e.getMessage());
+            return status;
+        }
+    }
+
     public RestViewDefinitionStatus validateViewDefinition(
             @ApiParam(required = true) @RequestBody final ViewDefinition restViewDefinition) throws Exception {
         LOGGER.debug("Validating view : %s", restViewDefinition.getName()); //$NON-NLS-1$
 
+        RestViewDefinitionStatus viewDefnStatus = checkViewDefinition(restViewDefinition);
+        if (viewDefnStatus != null) {
+            return viewDefnStatus;
+        }
+
+        //does not require the virtualization preview vdb to be deployed
+        ValidationResult result = metadataService.validateViewDefinition(restViewDefinition);
+        return toStatus(restViewDefinition, result);
+    }
+
+    /**
+     * Validate all of the view definitions of a virtualization against the same preview vdb
+     * @return the status of each view definition
+     * @throws Exception
+     */
+    @RequestMapping(value = V1Constants.VALIDATE_SEGMENT + StringConstants.FS + V1Constants.VIRTUALIZATION_PLACEHOLDER,
+            method = RequestMethod.GET, produces = { MediaType.APPLICATION_JSON_VALUE })
+    @ApiOperation(value = "Validate all view definitions of a virtualization",
+                  response = RestViewDefinitionStatus.class, responseContainer = "List")
+    @ApiResponses(value = {
+        @ApiResponse(code = 202, message = "The preview vdb is loading, poll the location for its status", response = RestPreviewVdbStatus.class),
+        @ApiResponse(code = 404, message = "No virtualization could be found with name"),
+        @ApiResponse(code = 406, message = "Only JSON is returned by this operation"),
+        @ApiResponse(code = 403, message = "An error has occurred.")
+    })
+    public List<RestViewDefinitionStatus> validateViewDefinitions(
+            @ApiParam(value = "Name of the virtualization", required = true)
+            final @PathVariable(V1Constants.VIRTUALIZATION) String virtualization) throws Exception {
+        //only the reads need the transaction, the preview vdb deployment and validation can take a while
+        List<? extends ViewDefinition> viewDefinitions = repositoryManager.runInTransaction(true, ()->{
+            if (getWorkspaceManager().findDataVirtualization(virtualization) == null) {
+                throw notFound(virtualization);
+            }
+            return getWorkspaceManager().findViewDefinitions(virtualization);
+        });
+
+        RestViewDefinitionStatus[] statuses = new RestViewDefinitionStatus[viewDefinitions.size()];
+        List<Integer> toValidate = new ArrayList<>();
+        List<String> ddls = new ArrayList<>();
+        for (int i = 0; i < statuses.length; i++) {
+            ViewDefinition viewDefinition = viewDefinitions.get(i);
+            statuses[i] = checkViewDefinition(viewDefinition);
+            if (statuses[i] == null) {
+                toValidate.add(i);
+                ddls.add(viewDefinition.getDdl());
+            }
+        }
+
+        if (!ddls.isEmpty()) {
+            //a single snapshot of the preview vdb for all of the views
+            TeiidVdb vdb = metadataService.getLoadedPreviewVdb(virtualization);
+            List<ValidationResult> results = vdb.validate(ddls);
+            for (int i = 0; i < results.size(); i++) {
+                int index = toValidate.get(i);
+                statuses[index] = toStatus(viewDefinitions.get(index), results.get(i));
+            }
+        }
+
+        for (int i = 0; i < statuses.length; i++) {
+            statuses[i].setViewDefinition(viewDefinitions.get(i));
+        }
+        return Arrays.asList(statuses);
+    }
+
+    /**
+     * @return an error status if the view definition can't be validated, or null
+     */
+    private static RestViewDefinitionStatus checkViewDefinition(ViewDefinition restViewDefinition) {
         RestViewDefinitionStatus viewDefnStatus = new RestViewDefinitionStatus();
 
         String viewName = restViewDefinition.getName();
@@ -164,14 +255,15 @@ public final class EditorService extends DvService {
             viewDefnStatus.setMessage(Messages.getString(Messages.Error.VIEW_DEFINITION_MISSING_DDL));
             return viewDefnStatus;
         }
+        return null;
+    }
 
-        TeiidVdb vdb = metadataService.updatePreviewVdb(restViewDefinition.getDataVirtualizationName());
-
-        if (vdb == null || !vdb.hasLoaded()) {
-            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE);
-        }
-
-        ValidationResult result = vdb.validate(restViewDefinition.getDdl());
+    /**
+     * Create the status from the validation result, the source paths of the view definition are also updated
+     */
+    private RestViewDefinitionStatus toStatus(ViewDefinition restViewDefinition, ValidationResult result) {
+        RestViewDefinitionStatus viewDefnStatus = new RestViewDefinitionStatus();
+        String viewName = restViewDefinition.getName();
         ValidatorReport report = result.getReport();
 
         if (result.getMetadataException() != null) {
@@ -283,6 +375,8 @@ public final class EditorService extends DvService {
                     viewDefn.setParsable(true);
                     updateDv = true;
                 }
+                //the generated view reads directly from its source paths
+                getWorkspaceManager().updateViewDependencies(viewDefn, viewDefn.getSourcePaths());
                 // else we're trusting the ui
             } else if (viewDefn.getDdl() != null && !Objects.equals(oldDdl, viewDefn.getDdl())) {
 
@@ -301,8 +395,8 @@ public final class EditorService extends DvService {
                     }
                     if (result.getMetadataException() == null) {
                         viewDefn.setParsable(true);
-                        //determine if this can just change the view definition
-                        //for now we'll redo everything
+                        //the preview vdb will be updated incrementally
+                        //if only the view definition changed
                         updateDv = true;
                     }
                 } else {
@@ -317,6 +411,7 @@ public final class EditorService extends DvService {
             if (updateDv) {
                 DataVirtualization dv = getWorkspaceManager().findDataVirtualization(viewDefn.getDataVirtualizationName());
                 dv.setModifiedAt(null); //effectively a touch to increment version/modification date
+                virtualizationVersionCache.invalidate(dv.getName());
             }
         }
 
@@ -347,6 +442,7 @@ public final class EditorService extends DvService {
             if (vd.isComplete() && vd.isParsable()) {
                 DataVirtualization dv = getWorkspaceManager().findDataVirtualization(vd.getDataVirtualizationName());
                 dv.setModifiedAt(null);
+                virtualizationVersionCache.invalidate(dv.getName());
             }
 
             getWorkspaceManager().deleteViewDefinition(viewEditorStateId);
@@ -17,38 +17,72 @@
  */
 package io.syndesis.dv.server.endpoint;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.data.util.Pair;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.teiid.adminapi.Model.Type;
 import org.teiid.adminapi.VDB.Status;
 import org.teiid.adminapi.impl.ModelMetaData;
 import org.teiid.adminapi.impl.VDBImportMetadata;
 import org.teiid.adminapi.impl.VDBMetaData;
+import org.teiid.api.exception.query.QueryParserException;
 import org.teiid.deployers.CompositeVDB;
 import org.teiid.deployers.VDBLifeCycleListener;
 import org.teiid.metadata.AbstractMetadataRecord;
 import org.teiid.metadata.Schema;
+import org.teiid.metadata.Table;
+import org.teiid.query.parser.QueryParser;
+import org.teiid.query.sql.symbol.GroupSymbol;
+import org.teiid.query.sql.visitor.GroupCollectorVisitor;
+import org.teiid.util.FullyQualifiedName;
 
 import com.google.common.util.concurrent.Striped;
 
@@ -61,17 +95,27 @@ import io.syndesis.dv.KException;
 import io.syndesis.dv.StringConstants;
 import io.syndesis.dv.datasources.DefaultSyndesisDataSource;
 import io.syndesis.dv.metadata.MetadataInstance;
+import io.syndesis.dv.metadata.MetadataInstance.ValidationResult;
 import io.syndesis.dv.metadata.TeiidDataSource;
 import io.syndesis.dv.metadata.TeiidVdb;
 import io.syndesis.dv.metadata.internal.DDLDBMetadataRepository;
 import io.syndesis.dv.metadata.internal.DefaultMetadataInstance;
+import io.syndesis.dv.metadata.query.QSColumn;
+import io.syndesis.dv.metadata.query.QSColumnarFormat;
+import io.syndesis.dv.metadata.query.QSCursor;
+import io.syndesis.dv.metadata.query.QSLob;
+import io.syndesis.dv.metadata.query.QSOptions;
 import io.syndesis.dv.metadata.query.QSResult;
+import io.syndesis.dv.metadata.query.QSRow;
+import io.syndesis.dv.metadata.query.QSStatistics;
 import io.syndesis.dv.model.DataVirtualization;
 import io.syndesis.dv.model.SourceSchema;
+import io.syndesis.dv.model.ViewDefinition;
 import io.syndesis.dv.openshift.TeiidOpenShiftClient;
 import io.syndesis.dv.server.DvService;
 import io.syndesis.dv.server.Messages;
 import io.syndesis.dv.server.V1Constants;
+import io.syndesis.dv.server.endpoint.QueryAdmissionController.Permit;
 import io.syndesis.dv.utils.PathUtils;
 import io.syndesis.dv.utils.StringUtils;
 /**
@@ -86,9 +130,13 @@ public class MetadataService extends DvService implements ServiceVdbGenerator.Sc
 
     private static final String VERSION_PROPERTY = "version"; //$NON-NLS-1$
 
-    private static final String CONNECTION_VDB_SUFFIX = "conn"; //$NON-NLS-1$
+    private static final String MASTER_GENERATION_PROPERTY = "master-generation"; //$NON-NLS-1$
 
-    private static final String LOAD_SUFFIX = "-load"; //$NON-NLS-1$
+    private static final String CONNECTION_VDB_SUFFIX = StringConstants.CONNECTION_VDB_SUFFIX;
+
+    private static final String LOAD_SUFFIX = StringConstants.LOAD_VDB_SUFFIX;
+
+    private static final int DEFAULT_CURSOR_PAGE_SIZE = 100;
 
     /**
      * fqn table option key
@@ -106,6 +154,30 @@ public class MetadataService extends DvService implements ServiceVdbGenerator.Sc
     @Autowired
     private ScheduledThreadPoolExecutor connectionExecutor;
 
+    @Autowired
+    private QueryCursorRegistry queryCursorRegistry;
+
+    @Autowired
+    private QueryResultCache queryResultCache;
+
+    @Autowired
+    private QueryJobManager queryJobManager;
+
+    @Autowired
+    private QueryCoalescer queryCoalescer;
+
+    @Autowired
+    private QueryAdmissionController queryAdmissionController;
+
+    @Autowired
+    private QueryLobStore queryLobStore;
+
+    @Autowired
+    private VirtualizationVersionCache virtualizationVersionCache;
+
+    @Autowired
+    private PreviewVdbTracker previewVdbTracker;
+
     /**
      * locks to make sure request threads don't step on each other's
      * vdb deployments/undeployments. The keys are either dv names, or
@@ -113,9 +185,91 @@ public class MetadataService extends DvService implements ServiceVdbGenerator.Sc
      */
     private Striped<Lock> previewVdbLocks = Striped.lazyWeakLock(32);
     /**
-     * lock for operations that depend on / affect the master preview vdb
+     * lock for operations that depend on / affect the master preview vdb.
+     * Deployments of the virtualization preview vdbs, which import the master,
+     * share the read lock so that independent virtualizations deploy in parallel
+     * - only the master refresh is exclusive
+     */
+    private ReadWriteLock masterLock = new ReentrantReadWriteLock();
+
+    /**
+     * refresh requests for the master preview vdb within this window are collapsed into one
+     */
+    @Value("${teiid.syndesis.preview.refresh-window-millis:500}")
+    private long refreshWindowMillis = 500;
+
+    /**
+     * the longest a requested master preview vdb refresh may be deferred
+     */
+    @Value("${teiid.syndesis.preview.refresh-max-delay-millis:5000}")
+    private long refreshMaxDelayMillis = 5000;
+
+    private DebouncedTask previewRefresh;
+
+    /**
+     * the sources that have changed since the last master preview vdb refresh,
+     * only the virtualizations that depend on them need to be redeployed
+     */
+    private Set<String> changedSources = ConcurrentHashMap.newKeySet();
+
+    /**
+     * incremented with each deployment of the master preview vdb.  Preview vdbs are
+     * stamped with the generation they were built against.
+     */
+    private volatile long masterGeneration;
+
+    /**
+     * how long a request will wait for a preview vdb deployment before
+     * responding with 202 Accepted and the deployment status
      */
-    private Object masterLock = new Object();
+    @Value("${teiid.syndesis.preview.deploy-wait-millis:5000}")
+    private long deployWaitMillis = 5000;
+
+    /**
+     * the number of preview vdbs that may be deployed concurrently on behalf of requests
+     */
+    @Value("${teiid.syndesis.preview.deploy-threads:4}")
+    private int deployThreads = 4;
+
+    private ThreadPoolExecutor previewDeployExecutor;
+
+    /**
+     * A preview vdb deployment performed on behalf of requests
+     */
+    private static class PreviewDeployment {
+        final CompletableFuture<TeiidVdb> future = new CompletableFuture<>();
+        final long start = System.nanoTime();
+    }
+
+    /**
+     * the in progress or failed deployments by dv name
+     */
+    private Map<String, PreviewDeployment> previewDeployments = new ConcurrentHashMap<>();
+
+    /**
+     * the number of most recently modified virtualizations to deploy preview vdbs for at startup
+     */
+    @Value("${teiid.syndesis.preview.warm-count:10}")
+    private int warmCount = 10;
+
+    /**
+     * the number of preview vdbs that may be deployed concurrently by the startup warm up
+     */
+    @Value("${teiid.syndesis.preview.warm-parallelism:2}")
+    private int warmParallelism = 2;
+
+    private AtomicBoolean firstSynchronization = new AtomicBoolean();
+
+    /**
+     * true if the warm up should run after the next preview vdb refresh
+     */
+    private AtomicBoolean warmPending = new AtomicBoolean();
+
+    /**
+     * the number of rows fetched and flushed at a time when streaming query results
+     */
+    @Value("${teiid.syndesis.query.stream-batch-size:256}")
+    private int streamBatchSize = 256;
 
     private MetadataInstance getMetadataInstance() {
         return metadataInstance;
@@ -129,34 +283,134 @@ public class MetadataService extends DvService implements ServiceVdbGenerator.Sc
     }
 
     public void refreshPreviewVdb() throws KException {
+        Set<String> sources = new HashSet<>(changedSources);
+        changedSources.removeAll(sources);
+        boolean deployed = false;
+        try {
+            refreshPreviewVdb(sources);
+            deployed = true;
+        } finally {
+            if (!deployed) {
+                //still pending for the next refresh
+                changedSources.addAll(sources);
+            }
+        }
+    }
+
+    private void refreshPreviewVdb(Set<String> sources) throws KException {
+        Set<String> affected = null;
+        try {
+            affected = repositoryManager.runInTransaction(true, ()->{
+                return new HashSet<>(repositoryManager.findDataVirtualizationNamesBySchemaNames(sources));
+            });
+        } catch (Exception e) {
+            LOGGER.warn("Could not determine the affected virtualizations, all preview vdbs will be redeployed", e); //$NON-NLS-1$
+        }
+
         VDBMetaData workingCopy = new VDBMetaData();
         workingCopy.setName(EditorService.PREVIEW_VDB);
         workingCopy.addProperty("preview", "true");  //$NON-NLS-1$ //$NON-NLS-2$
 
+        long generation = masterGeneration;
         Collection<TeiidVdb> vdbs = getMetadataInstance().getVdbs();
+        Set<String> sourceNames = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
         for( TeiidVdb vdb: vdbs) {
-            if (vdb.getName().endsWith(CONNECTION_VDB_SUFFIX)) {
-                if (!vdb.isActive()) {
-                    continue;
-                }
+            if (vdb.getName().endsWith(CONNECTION_VDB_SUFFIX) && vdb.isActive()) {
                 VDBImportMetadata vdbImport = new VDBImportMetadata();
                 vdbImport.setVersion(DefaultMetadataInstance.DEFAULT_VDB_VERSION);
                 vdbImport.setName(vdb.getName());
                 workingCopy.getVDBImports().add(vdbImport);
-            } else if (vdb.getName().endsWith(StringConstants.SERVICE_VDB_SUFFIX)) {
-                //no longer valid
-                synchronized (masterLock) {
-                    //TODO: could make this the more granular lock
-                    getMetadataInstance().undeployDynamicVdb(vdb.getName());
-                }
+                sourceNames.add(vdb.getName().substring(0, vdb.getName().length() - CONNECTION_VDB_SUFFIX.length()));
             }
         }
-        synchronized (masterLock) {
+        //the preview vdbs that are still valid and their versions
+        Map<String, String> kept = new HashMap<>();
+        for( TeiidVdb vdb: vdbs) {
+            if (!vdb.getName().endsWith(StringConstants.SERVICE_VDB_SUFFIX)) {
+                continue;
+            }
+            String dvName = getVirtualizationName(vdb.getName());
+            //the dependencies are not known until loaded, and errors may be resolved by the change
+            if (affected != null && !affected.contains(dvName) && vdb.hasLoaded()
+                    && vdb.getValidityErrors().isEmpty()
+                    && String.valueOf(generation).equals(vdb.getPropertyValue(MASTER_GENERATION_PROPERTY))
+                    && !referencesMissingSource(vdb, dvName, sourceNames)) {
+                kept.put(vdb.getName(), vdb.getPropertyValue(VERSION_PROPERTY));
+                continue;
+            }
+            //no longer valid
+            Lock lock = previewVdbLocks.get(dvName);
+            lock.lock();
+            try {
+                getMetadataInstance().undeployDynamicVdb(vdb.getName());
+            } finally {
+                lock.unlock();
+            }
+        }
+        //the working copy is built outside of the lock, only the deployment is exclusive
+        masterLock.writeLock().lock();
+        try {
+            long next = masterGeneration + 1;
+            workingCopy.addProperty(MASTER_GENERATION_PROPERTY, String.valueOf(next));
             getMetadataInstance().deploy(workingCopy);
+            masterGeneration = next;
+            //the kept preview vdbs are just as valid against the new master, unless
+            //they have been redeployed since
+            for (Map.Entry<String, String> entry : kept.entrySet()) {
+                TeiidVdb vdb = getMetadataInstance().getVdb(entry.getKey());
+                if (vdb != null && Objects.equals(entry.getValue(), vdb.getPropertyValue(VERSION_PROPERTY))
+                        && String.valueOf(generation).equals(vdb.getPropertyValue(MASTER_GENERATION_PROPERTY))) {
+                    getMetadataInstance().setVdbProperty(entry.getKey(), MASTER_GENERATION_PROPERTY, String.valueOf(next));
+                }
+            }
+        } finally {
+            masterLock.writeLock().unlock();
         }
         LOGGER.debug("preview vdb updated"); //$NON-NLS-1$
     }
 
+    /**
+     * The preview vdb is tolerant of views that don't resolve, so a view that
+     * reads from a source that has since become available has no error or
+     * recorded dependency.
+     * @return true if a view selects from a source that the preview vdb does not import
+     */
+    static boolean referencesMissingSource(TeiidVdb vdb, String dvName, Set<String> sourceNames) {
+        Schema schema = vdb.getSchema(dvName);
+        if (schema == null) {
+            return false;
+        }
+        for (Table view : schema.getTables().values()) {
+            if (view.getSelectTransformation() == null) {
+                continue;
+            }
+            try {
+                for (GroupSymbol group : GroupCollectorVisitor.getGroupsIgnoreInlineViews(
+                        QueryParser.getQueryParser().parseCommand(view.getSelectTransformation()), true)) {
+                    String name = group.getNonCorrelationName();
+                    int index = name.indexOf('.');
+                    if (index > 0) {
+                        String schemaName = name.substring(0, index);
+                        if (sourceNames.contains(schemaName) && vdb.getSchema(schemaName) == null) {
+                            return true;
+                        }
+                    }
+                }
+            } catch (QueryParserException e) {
+                //not deployable either way
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the preview vdb was built against, or is known to be valid with,
+     * the deployed master preview vdb
+     */
+    private boolean isCurrentMaster(TeiidVdb vdb) {
+        return String.valueOf(masterGeneration).equals(vdb.getPropertyValue(MASTER_GENERATION_PROPERTY));
+    }
+
     /**
      * Query the teiid server
      * @param kqa the query attribute (never <code>null</code>)
@@ -169,7 +423,8 @@ public class MetadataService extends DvService implements ServiceVdbGenerator.Sc
     @ApiOperation(value = "Pass a query to the teiid server")
     @ApiResponses(value = {
         @ApiResponse(code = 406, message = "Only JSON is returned by this operation"),
-        @ApiResponse(code = 400, message = "An error has occurred.")
+        @ApiResponse(code = 400, message = "An error has occurred."),
+        @ApiResponse(code = 429, message = "Too many concurrent queries or open cursors.")
     })
     public QSResult query(@ApiParam( value = "" +
              "JSON of the properties of the query:<br>" +
@@ -181,10 +436,381 @@ public class MetadataService extends DvService implements ServiceVdbGenerator.Sc
              NBSP + "then the name of the service vdb is extracted and " +
              NBSP + "replaces the data service)" + CLOSE_PRE_CMT + COMMA + BR +
              NBSP + "limit: Add a limit on number of results to be returned" + COMMA + BR +
-             NBSP + "offset: The index of the result to begin the results with" + BR +
+             NBSP + "offset: The index of the result to begin the results with" + COMMA + BR +
+             NBSP + "cursor: If true the limit is used as the page size and a cursorId is returned " +
+             NBSP + "to fetch the next page, if there is one" + COMMA + BR +
+             NBSP + "cache: If true a cached result for the same virtualization version may be returned" + COMMA + BR +
+             NBSP + "statistics: If true the execution timings, query plan and pushdown queries are returned" + COMMA + BR +
+             NBSP + "lobs: If true large object values are spooled and returned as references to fetch, " +
+             NBSP + "rather than as placeholders" + BR +
              CLOSE_BRACE +
              CLOSE_PRE_TAG,required = true)
            @RequestBody final QueryAttribute kqa) throws Exception {
+        TeiidVdb vdb = getQueryVdb(kqa);
+
+        if (kqa.isCursor()) {
+            int pageSize = kqa.getLimit() > 0 ? kqa.getLimit() : DEFAULT_CURSOR_PAGE_SIZE;
+            Collection<String> sources = getQuerySources(vdb, kqa.getTarget());
+            //the slot is reserved before the query is executed, and admission
+            //is only held while executing and reading each page
+            return queryCursorRegistry.open(
+                    () -> openCursor(vdb, kqa, MetadataInstance.NO_LIMIT, pageSize),
+                    () -> queryAdmissionController.acquire(kqa.getTarget(), sources), pageSize);
+        }
+
+        if (kqa.isStatistics()) {
+            //not shared or cached as the timings are specific to this execution
+            try (Permit permit = admit(kqa.getTarget(), vdb)) {
+                return queryWithStatistics(vdb, kqa);
+            }
+        }
+
+        QueryKey key = new QueryKey(vdb.getName(), vdb.getPropertyValue(VERSION_PROPERTY),
+                kqa.getQuery(), kqa.getOffset(), kqa.getLimit(), kqa.isLobs());
+        QSResult result = null;
+        if (kqa.isCache()) {
+            result = queryResultCache.get(key);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        //identical concurrent requests share the execution
+        result = queryCoalescer.execute(key, () -> {
+            try (Permit permit = admit(kqa.getTarget(), vdb)) {
+                return getMetadataInstance().query(
+                        vdb.getName(), kqa.getQuery(), kqa.getOffset(), kqa.getLimit(), queryOptions(kqa));
+            }
+        });
+
+        //lob references expire, so the result can't be reused
+        if (kqa.isCache() && !hasLobs(result)) {
+            queryResultCache.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Execute the query capturing the timings of each phase and the query plan
+     */
+    private QSResult queryWithStatistics(TeiidVdb vdb, QueryAttribute kqa) throws Exception {
+        QSStatistics statistics = new QSStatistics();
+        QSOptions options = queryOptions(kqa).setShowPlan(true);
+        QSResult result = new QSResult();
+
+        long start = System.nanoTime();
+        try (QSCursor cursor = getMetadataInstance().openCursor(vdb.getName(), kqa.getQuery(),
+                kqa.getOffset(), kqa.getLimit(), options)) {
+            statistics.setExecutionTime(elapsedMillis(start));
+            for (QSColumn column : cursor.getColumns()) {
+                result.addColumn(column);
+            }
+            QSRow row = cursor.next();
+            statistics.setFirstRowTime(elapsedMillis(start));
+            long bytes = 0;
+            for (; row != null; row = cursor.next()) {
+                result.addRow(row);
+                bytes += QueryResultCache.estimateSize(row);
+            }
+            statistics.setFetchTime(elapsedMillis(start));
+            statistics.setBytes(bytes);
+        }
+        //the plan is available once the cursor is closed
+        statistics.setPlanDescription(options.getPlanDescription());
+        statistics.setRowCount(result.getRows().size());
+
+        result.setStatistics(statistics);
+        return result;
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return options that spool large objects rather than returning placeholders
+     * if requested
+     */
+    private QSOptions queryOptions(QueryAttribute kqa) {
+        return new QSOptions().setLobStore(kqa.isLobs() ? queryLobStore : null);
+    }
+
+    static boolean hasLobs(QSResult result) {
+        for (QSRow row : result.getRows()) {
+            for (Object value : row.getRow()) {
+                if (value instanceof QSLob) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stream a large object value referenced by a query result.  Range
+     * requests are supported.
+     * @param lobId
+     * @return the lob contents
+     */
+    @RequestMapping(value = V1Constants.QUERY_SEGMENT + StringConstants.FS + V1Constants.LOBS_SEGMENT
+            + StringConstants.FS + V1Constants.LOB_PLACEHOLDER, method = RequestMethod.GET)
+    @ApiOperation(value = "Get the contents of a large object value from a query result")
+    @ApiResponses(value = {
+        @ApiResponse(code = 404, message = "No lob exists with that id, or it has expired.")
+    })
+    public ResponseEntity<Resource> getQueryLob(
+            @ApiParam( value = "Id of the lob", required = true )
+            final @PathVariable(V1Constants.LOB_ID) String lobId) {
+        QueryLobStore.StoredLob stored = queryLobStore.get(lobId);
+        MediaType mediaType = QSLob.CLOB.equals(stored.getLob().getType()) ?
+                new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8) : MediaType.APPLICATION_OCTET_STREAM;
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .body(new FileSystemResource(stored.getPath()));
+    }
+
+    /**
+     * Fetch the next page from an open query cursor
+     * @param cursorId
+     * @param limit the page size
+     * @return the next page of results, with a cursorId if there are more
+     * @throws Exception
+     */
+    @RequestMapping(value = V1Constants.QUERY_SEGMENT + StringConstants.FS + V1Constants.CURSORS_SEGMENT
+            + StringConstants.FS + V1Constants.CURSOR_PLACEHOLDER, method = RequestMethod.GET,
+            produces= { MediaType.APPLICATION_JSON_VALUE })
+    @ApiOperation(value = "Fetch the next page of results from an open query cursor")
+    @ApiResponses(value = {
+        @ApiResponse(code = 404, message = "No cursor exists with that id.")
+    })
+    public QSResult fetchQueryCursor(
+            @ApiParam( value = "Id of the cursor", required = true )
+            final @PathVariable(V1Constants.CURSOR_ID) String cursorId,
+            @ApiParam( value = "The page size" )
+            final @RequestParam(value = "limit", required = false) Integer limit) throws Exception {
+        int pageSize = limit != null && limit > 0 ? limit : DEFAULT_CURSOR_PAGE_SIZE;
+        return queryCursorRegistry.fetch(cursorId, pageSize);
+    }
+
+    /**
+     * Close an open query cursor
+     * @param cursorId
+     * @return status
+     */
+    @RequestMapping(value = V1Constants.QUERY_SEGMENT + StringConstants.FS + V1Constants.CURSORS_SEGMENT
+            + StringConstants.FS + V1Constants.CURSOR_PLACEHOLDER, method = RequestMethod.DELETE,
+            produces= { MediaType.APPLICATION_JSON_VALUE })
+    @ApiOperation(value = "Close an open query cursor")
+    @ApiResponses(value = {
+        @ApiResponse(code = 404, message = "No cursor exists with that id.")
+    })
+    public StatusObject closeQueryCursor(
+            @ApiParam( value = "Id of the cursor", required = true )
+            final @PathVariable(V1Constants.CURSOR_ID) String cursorId) {
+        if (!queryCursorRegistry.close(cursorId)) {
+            throw notFound(cursorId);
+        }
+        return new StatusObject("Cursor closed"); //$NON-NLS-1$
+    }
+
+    /**
+     * Query the teiid server and stream the results as they are read
+     * @param kqa the query attribute (never <code>null</code>)
+     * @return a newline delimited JSON representation of the Query results (never <code>null</code>)
+     * @throws Exception
+     */
+    @RequestMapping(value = V1Constants.QUERY_SEGMENT, method = RequestMethod.POST,
+        produces= { V1Constants.APPLICATION_NDJSON_VALUE }, consumes = { MediaType.APPLICATION_JSON_VALUE })
+    @ApiOperation(value = "Pass a query to the teiid server and stream the results. "
+            + "The first line contains the columns, each subsequent line a row.")
+    @ApiResponses(value = {
+        @ApiResponse(code = 400, message = "An error has occurred.")
+    })
+    public ResponseEntity<StreamingResponseBody> streamQuery(
+            @ApiParam( value = "JSON of the properties of the query", required = true)
+            @RequestBody final QueryAttribute kqa) throws Exception {
+        QSCursor cursor = openStreamingCursor(kqa);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(V1Constants.APPLICATION_NDJSON_VALUE))
+                .body(new StreamingQueryResult(cursor, streamBatchSize));
+    }
+
+    /**
+     * Query the teiid server and stream the results in a compact binary columnar format
+     * @param kqa the query attribute (never <code>null</code>)
+     * @return the results in the {@link QSColumnarFormat} (never <code>null</code>)
+     * @throws Exception
+     */
+    @RequestMapping(value = V1Constants.QUERY_SEGMENT, method = RequestMethod.POST,
+        produces= { V1Constants.APPLICATION_COLUMNAR_VALUE }, consumes = { MediaType.APPLICATION_JSON_VALUE })
+    @ApiOperation(value = "Pass a query to the teiid server and return the results as typed column batches")
+    @ApiResponses(value = {
+        @ApiResponse(code = 400, message = "An error has occurred.")
+    })
+    public ResponseEntity<StreamingResponseBody> columnarQuery(
+            @ApiParam( value = "JSON of the properties of the query", required = true)
+            @RequestBody final QueryAttribute kqa) throws Exception {
+        QSCursor cursor = openStreamingCursor(kqa);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(V1Constants.APPLICATION_COLUMNAR_VALUE))
+                .body(new ColumnarQueryResult(cursor, streamBatchSize));
+    }
+
+    /**
+     * Open a cursor whose admission is held until it is closed
+     */
+    private QSCursor openStreamingCursor(final QueryAttribute kqa) throws Exception {
+        TeiidVdb vdb = getQueryVdb(kqa);
+
+        //execute before returning so that query errors are still reported with the appropriate status
+        return openAdmittedCursor(vdb, kqa, kqa.getLimit(), streamBatchSize);
+    }
+
+    /**
+     * Open a cursor that holds its admission permit until it is closed
+     */
+    private QSCursor openAdmittedCursor(TeiidVdb vdb, final QueryAttribute kqa, int limit, int fetchSize) throws Exception {
+        Permit permit = admit(kqa.getTarget(), vdb);
+        QSCursor cursor = null;
+        try {
+            cursor = openCursor(vdb, kqa, limit, fetchSize);
+        } finally {
+            if (cursor == null) {
+                permit.close();
+            }
+        }
+        return new PermitCursor(cursor, permit);
+    }
+
+    private QSCursor openCursor(TeiidVdb vdb, final QueryAttribute kqa, int limit, int fetchSize) throws KException {
+        return getMetadataInstance().openCursor(vdb.getName(), kqa.getQuery(),
+                kqa.getOffset(), limit, queryOptions(kqa).setFetchSize(fetchSize));
+    }
+
+    /**
+     * Submit a query to be run asynchronously
+     * @param kqa the query attribute (never <code>null</code>)
+     * @return the job status
+     * @throws Exception
+     */
+    @RequestMapping(value = V1Constants.QUERY_SEGMENT + StringConstants.FS + V1Constants.JOBS_SEGMENT,
+            method = RequestMethod.POST,
+            produces= { MediaType.APPLICATION_JSON_VALUE }, consumes = { MediaType.APPLICATION_JSON_VALUE })
+    @ApiOperation(value = "Submit a query to be run asynchronously, returns the job id to poll")
+    @ApiResponses(value = {
+        @ApiResponse(code = 429, message = "Too many pending jobs.")
+    })
+    public ResponseEntity<RestQueryJob> submitQueryJob(
+            @ApiParam( value = "JSON of the properties of the query", required = true)
+            @RequestBody final QueryAttribute kqa) throws Exception {
+        TeiidVdb vdb = getQueryVdb(kqa);
+
+        RestQueryJob job = queryJobManager.submit(kqa.getTarget(), getQuerySources(vdb, kqa.getTarget()),
+                vdb.getName(), kqa.getQuery(), kqa.getOffset(), kqa.getLimit(), kqa.isLobs());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+    }
+
+    /**
+     * Get the status and results read so far of a query job
+     * @param jobId
+     * @return the job status
+     */
+    @RequestMapping(value = V1Constants.QUERY_SEGMENT + StringConstants.FS + V1Constants.JOBS_SEGMENT
+            + StringConstants.FS + V1Constants.JOB_PLACEHOLDER, method = RequestMethod.GET,
+            produces= { MediaType.APPLICATION_JSON_VALUE })
+    @ApiOperation(value = "Get the status and current results of a query job")
+    @ApiResponses(value = {
+        @ApiResponse(code = 404, message = "No job exists with that id.")
+    })
+    public RestQueryJob getQueryJob(
+            @ApiParam( value = "Id of the job", required = true )
+            final @PathVariable(V1Constants.JOB_ID) String jobId) {
+        return queryJobManager.get(jobId);
+    }
+
+    /**
+     * Cancel a query job
+     * @param jobId
+     * @return the final job status
+     */
+    @RequestMapping(value = V1Constants.QUERY_SEGMENT + StringConstants.FS + V1Constants.JOBS_SEGMENT
+            + StringConstants.FS + V1Constants.JOB_PLACEHOLDER, method = RequestMethod.DELETE,
+            produces= { MediaType.APPLICATION_JSON_VALUE })
+    @ApiOperation(value = "Cancel a query job")
+    @ApiResponses(value = {
+        @ApiResponse(code = 404, message = "No job exists with that id.")
+    })
+    public RestQueryJob cancelQueryJob(
+            @ApiParam( value = "Id of the job", required = true )
+            final @PathVariable(V1Constants.JOB_ID) String jobId) {
+        return queryJobManager.cancel(jobId);
+    }
+
+    /**
+     * Acquire admission for a query against the virtualization
+     */
+    private Permit admit(String dvName, TeiidVdb vdb) throws InterruptedException {
+        return queryAdmissionController.acquire(dvName, getQuerySources(vdb, dvName));
+    }
+
+    /**
+     * Determine the sources that may be accessed by queries against the virtualization
+     * from the incoming objects of its views.
+     */
+    static Collection<String> getQuerySources(TeiidVdb vdb, String dvName) {
+        Schema schema = vdb.getSchema(dvName);
+        if (schema == null) {
+            return Collections.emptyList();
+        }
+        Set<String> result = new TreeSet<>();
+        for (Table table : schema.getTables().values()) {
+            for (AbstractMetadataRecord record : table.getIncomingObjects()) {
+                if (record instanceof Table) {
+                    Schema source = ((Table)record).getParent();
+                    if (source != null && source.isPhysical()) {
+                        result.add(source.getName());
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Releases the admission permit once the cursor is closed
+     */
+    private static class PermitCursor implements QSCursor {
+        private final QSCursor delegate;
+        private final Permit permit;
+
+        PermitCursor(QSCursor delegate, Permit permit) {
+            this.delegate = delegate;
+            this.permit = permit;
+        }
+
+        @Override
+        public List<QSColumn> getColumns() {
+            return delegate.getColumns();
+        }
+
+        @Override
+        public QSRow next() throws KException {
+            return delegate.next();
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                permit.close();
+            }
+        }
+    }
+
+    private TeiidVdb getQueryVdb(final QueryAttribute kqa) throws Exception {
         //
         // Error if there is no query attribute defined
         //
@@ -197,27 +823,216 @@ public class MetadataService extends DvService implements ServiceVdbGenerator.Sc
         }
 
         String target = kqa.getTarget();
-        String query = kqa.getQuery();
 
         TeiidVdb vdb = updatePreviewVdb(target);
 
-        LOGGER.debug("Establishing query service for query %s on vdb %s", query, target);
-        QSResult result = getMetadataInstance().query(vdb.getName(), query, kqa.getOffset(), kqa.getLimit());
-        return result;
+        LOGGER.debug("Establishing query service for query %s on vdb %s", kqa.getQuery(), target); //$NON-NLS-1$
+        return vdb;
     }
 
     protected TeiidVdb updatePreviewVdb(String dvName) throws Exception {
+        TeiidVdb vdb = deployPreviewVdb(dvName);
+        List<String> toEvict = previewVdbTracker.touch(dvName);
+        if (!toEvict.isEmpty()) {
+            connectionExecutor.execute(() -> evictPreviewVdbs(toEvict));
+        }
+        return vdb;
+    }
+
+    /**
+     * Undeploy the cold preview vdbs, they will be redeployed on the next access
+     */
+    void evictPreviewVdbs(List<String> dvNames) {
+        for (String dvName : dvNames) {
+            Lock lock = previewVdbLocks.get(dvName);
+            lock.lock();
+            try {
+                if (previewVdbTracker.isTracked(dvName)) {
+                    //accessed again since being selected
+                    continue;
+                }
+                LOGGER.debug("evicting preview vdb for %s", dvName); //$NON-NLS-1$
+                getMetadataInstance().undeployDynamicVdb(DataVirtualization.getPreviewVdbName(dvName));
+            } catch (KException e) {
+                LOGGER.warn("Could not evict the preview vdb", e); //$NON-NLS-1$
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static String getVirtualizationName(String previewVdbName) {
+        return previewVdbName.substring(0, previewVdbName.length() - StringConstants.SERVICE_VDB_SUFFIX.length());
+    }
+
+    /**
+     * @return the deployed preview vdb if it is known to be current without a transaction, or null
+     */
+    private TeiidVdb getCurrentPreviewVdb(String dvName) throws KException {
+        Long knownVersion = virtualizationVersionCache.get(dvName);
+        if (knownVersion != null) {
+            TeiidVdb vdb = getMetadataInstance().getVdb(DataVirtualization.getPreviewVdbName(dvName));
+            if (vdb != null && knownVersion.toString().equals(vdb.getPropertyValue(VERSION_PROPERTY))
+                    && isCurrentMaster(vdb)) {
+                return vdb;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Validate the view definition against the master preview vdb overlaid with the other
+     * previewable views of the virtualization, so that the virtualization preview vdb does
+     * not need to be deployed.  If the master preview vdb is not loaded, the virtualization
+     * preview vdb is used instead.
+     */
+    ValidationResult validateViewDefinition(ViewDefinition viewDefinition) throws Exception {
+        String dvName = viewDefinition.getDataVirtualizationName();
+        TeiidVdb master = getMetadataInstance().getVdb(EditorService.PREVIEW_VDB);
+        if (master == null || !master.hasLoaded()) {
+            return getLoadedPreviewVdb(dvName).validate(viewDefinition.getDdl());
+        }
+        List<String> viewDdls = repositoryManager.runInTransaction(true, ()->{
+            if (repositoryManager.findDataVirtualization(dvName) == null) {
+                throw notFound(dvName);
+            }
+            List<String> result = new ArrayList<>();
+            for (ViewDefinition other : repositoryManager.findViewDefinitions(dvName)) {
+                if (ServiceVdbGenerator.isPreviewable(other)
+                        && !other.getName().equalsIgnoreCase(viewDefinition.getName())) {
+                    result.add(other.getDdl());
+                }
+            }
+            return result;
+        });
+        return master.validate(dvName, viewDdls, viewDefinition.getDdl());
+    }
+
+    /**
+     * Get the loaded preview vdb for the virtualization.  If it must be deployed, the deployment
+     * is performed by the preview deploy threads and the caller waits at most deployWaitMillis.
+     * @throws PreviewVdbLoadingException if the deployment or metadata load is still in progress
+     */
+    TeiidVdb getLoadedPreviewVdb(String dvName) throws Exception {
+        TeiidVdb vdb = getCurrentPreviewVdb(dvName);
+        if (vdb == null || !vdb.hasLoaded() || previewDeployments.containsKey(dvName)) {
+            PreviewDeployment deployment = startPreviewDeployment(dvName);
+            try {
+                vdb = deployment.future.get(deployWaitMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                throw new PreviewVdbLoadingException(getPreviewVdbStatus(dvName));
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception)e.getCause();
+                }
+                throw e;
+            }
+        } else {
+            vdb = updatePreviewVdb(dvName);
+        }
+        if (vdb != null && vdb.isLoading()) {
+            throw new PreviewVdbLoadingException(getPreviewVdbStatus(dvName));
+        }
+        if (vdb == null || !vdb.hasLoaded()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        return vdb;
+    }
+
+    /**
+     * Start a deployment of the preview vdb, or return the one already in progress
+     */
+    private PreviewDeployment startPreviewDeployment(String dvName) {
+        return previewDeployments.compute(dvName, (name, existing) -> {
+            if (existing != null && !existing.future.isCompletedExceptionally()) {
+                return existing;
+            }
+            PreviewDeployment deployment = new PreviewDeployment();
+            previewDeployExecutor.execute(() -> {
+                try {
+                    TeiidVdb vdb = updatePreviewVdb(name);
+                    //failures are retained for the status
+                    previewDeployments.remove(name, deployment);
+                    deployment.future.complete(vdb);
+                } catch (Throwable e) {
+                    deployment.future.completeExceptionally(e);
+                }
+            });
+            return deployment;
+        });
+    }
+
+    /**
+     * Get the preview vdb deployment and metadata load status
+     * @return the status of the virtualization preview vdb
+     * @throws Exception
+     */
+    @RequestMapping(value = V1Constants.PREVIEW_STATUS + StringConstants.FS
+            + V1Constants.VIRTUALIZATION_PLACEHOLDER, method = RequestMethod.GET, produces = { MediaType.APPLICATION_JSON_VALUE })
+    @ApiOperation(value = "Get the preview vdb status for a Virtualization", response = RestPreviewVdbStatus.class)
+    @ApiResponses(value = { @ApiResponse(code = 406, message = "Only JSON is returned by this operation"),
+            @ApiResponse(code = 403, message = "An error has occurred.") })
+    public RestPreviewVdbStatus getPreviewVdbStatus(
+            @ApiParam( value = "Name of the data virtualization", required = true )
+            final @PathVariable( VIRTUALIZATION ) String virtualization) throws Exception {
+        String vdbName = DataVirtualization.getPreviewVdbName(virtualization);
+        RestPreviewVdbStatus status = new RestPreviewVdbStatus(virtualization, vdbName);
+        TeiidVdb vdb = getMetadataInstance().getVdb(vdbName);
+        List<String> errors = new ArrayList<>();
+        if (vdb != null) {
+            status.setVersion(vdb.getPropertyValue(VERSION_PROPERTY));
+            Map<String, String> models = new LinkedHashMap<>();
+            vdb.getModelMetadataStatus().forEach((model, metadataStatus) -> models.put(model, metadataStatus.name()));
+            status.setModels(models);
+            errors.addAll(vdb.getValidityErrors());
+            if (vdb.hasLoaded()) {
+                status.setState(RestPreviewVdbStatus.State.LOADED);
+            } else if (vdb.isLoading()) {
+                status.setState(RestPreviewVdbStatus.State.LOADING);
+            } else {
+                status.setState(RestPreviewVdbStatus.State.FAILED);
+            }
+        }
+        PreviewDeployment deployment = previewDeployments.get(virtualization);
+        if (deployment != null) {
+            if (!deployment.future.isDone()) {
+                status.setState(RestPreviewVdbStatus.State.DEPLOYING);
+                status.setElapsedMillis(elapsedMillis(deployment.start));
+            } else if (deployment.future.isCompletedExceptionally()) {
+                status.setState(RestPreviewVdbStatus.State.FAILED);
+                try {
+                    deployment.future.join();
+                } catch (CompletionException e) {
+                    errors.add(String.valueOf(e.getCause().getMessage()));
+                }
+            }
+        }
+        if (!errors.isEmpty()) {
+            status.setErrors(errors);
+        }
+        return status;
+    }
+
+    private TeiidVdb deployPreviewVdb(String dvName) throws Exception {
+        //skip the transaction if the deployed vdb is known to be current
+        TeiidVdb current = getCurrentPreviewVdb(dvName);
+        if (current != null) {
+            return current;
+        }
+        long stamp = virtualizationVersionCache.getStamp();
         return repositoryManager.runInTransaction(true, ()->{
             DataVirtualization dv = repositoryManager.findDataVirtualization(dvName);
             if (dv == null) {
                 throw notFound(dvName);
             }
+            virtualizationVersionCache.put(dvName, dv.getVersion(), stamp);
 
             String serviceVdbName = DataVirtualization.getPreviewVdbName(dvName);
             TeiidVdb vdb = getMetadataInstance().getVdb(serviceVdbName);
 
             if (vdb != null
-                    && dv.getVersion().compareTo(Long.valueOf(vdb.getPropertyValue(VERSION_PROPERTY))) == 0) {
+                    && dv.getVersion().compareTo(Long.valueOf(vdb.getPropertyValue(VERSION_PROPERTY))) == 0
+                    && isCurrentMaster(vdb)) {
                 return vdb;
             }
             Lock lock = previewVdbLocks.get(dvName);
@@ -225,16 +1040,30 @@ public class MetadataService extends DvService implements ServiceVdbGenerator.Sc
             try {
                 vdb = getMetadataInstance().getVdb(serviceVdbName);
                 if (vdb != null
-                        && dv.getVersion().compareTo(Long.valueOf(vdb.getPropertyValue(VERSION_PROPERTY))) == 0) {
+                        && dv.getVersion().compareTo(Long.valueOf(vdb.getPropertyValue(VERSION_PROPERTY))) == 0
+                        && isCurrentMaster(vdb)) {
                     return vdb;
                 }
-                VDBMetaData theVdb = new ServiceVdbGenerator(this)
-                        .createPreviewVdb(dvName, serviceVdbName, repositoryManager.findViewDefinitions(dvName));
-                theVdb.addProperty(VERSION_PROPERTY, dv.getVersion().toString());
+                List<? extends ViewDefinition> viewDefinitions = repositoryManager.findViewDefinitions(dvName);
+
+                //other virtualizations may deploy concurrently
+                masterLock.readLock().lock();
+                try {
+                    if (vdb != null && isCurrentMaster(vdb)
+                            && updateViewDefinitions(dvName, vdb, viewDefinitions, dv.getVersion())) {
+                        //no deployment event for an incremental update
+                        connectionExecutor.execute(() -> recordViewDependencies(dvName));
+                        return getMetadataInstance().getVdb(serviceVdbName);
+                    }
+                    VDBMetaData theVdb = new ServiceVdbGenerator(this)
+                            .createPreviewVdb(dvName, serviceVdbName, viewDefinitions);
+                    theVdb.addProperty(VERSION_PROPERTY, dv.getVersion().toString());
+                    theVdb.addProperty(MASTER_GENERATION_PROPERTY, String.valueOf(masterGeneration));
 
-                synchronized (masterLock) {
                     metadataInstance.deploy(theVdb);
                     vdb = metadataInstance.getVdb(serviceVdbName);
+                } finally {
+                    masterLock.readLock().unlock();
                 }
             } finally {
                 lock.unlock();
@@ -243,6 +1072,55 @@ public class MetadataService extends DvService implements ServiceVdbGenerator.Sc
         });
     }
 
+    /**
+     * Attempt to update the deployed preview vdb with only the views that have changed
+     * since it was deployed, so that the cost is proportional to the change rather than
+     * the whole virtualization.
+     * @return false if a full deployment is needed
+     */
+    private boolean updateViewDefinitions(String dvName, TeiidVdb vdb,
+            List<? extends ViewDefinition> viewDefinitions, Long version) throws KException {
+        List<Table> changed = new ArrayList<>();
+        Map<String, String> properties = new LinkedHashMap<>();
+        int viewCount = 0;
+        for (ViewDefinition viewDefinition : viewDefinitions) {
+            if (!ServiceVdbGenerator.isPreviewable(viewDefinition)) {
+                continue;
+            }
+            viewCount++;
+            String key = ServiceVdbGenerator.VIEW_HASH_PREFIX + viewDefinition.getName();
+            String deployedHash = vdb.getPropertyValue(key);
+            if (deployedHash == null) {
+                //added
+                return false;
+            }
+            String hash = ServiceVdbGenerator.getViewHash(viewDefinition.getDdl());
+            if (deployedHash.equals(hash)) {
+                continue;
+            }
+            ValidationResult result = getMetadataInstance().parse(viewDefinition.getDdl());
+            if (result.getMetadataException() != null
+                    || result.getSchema().getTables().size() != 1
+                    || !result.getSchema().getProcedures().isEmpty()
+                    || !result.getSchema().getFunctions().isEmpty()) {
+                return false;
+            }
+            changed.add(result.getSchema().getTables().values().iterator().next());
+            properties.put(key, hash);
+        }
+        String deployedCount = vdb.getPropertyValue(ServiceVdbGenerator.VIEW_COUNT);
+        if (viewCount != (deployedCount == null ? 0 : Integer.parseInt(deployedCount))) {
+            //removed
+            return false;
+        }
+        properties.put(VERSION_PROPERTY, version.toString());
+        boolean updated = getMetadataInstance().updateViewDefinitions(vdb.getName(), dvName, changed, properties);
+        if (updated) {
+            LOGGER.debug("preview vdb %s updated incrementally with %d changed views", vdb.getName(), changed.size()); //$NON-NLS-1$
+        }
+        return updated;
+    }
+
     /**
      * Initiate schema refresh for a syndesis source.
      * @param teiidSourceName the syndesis source name (cannot be empty)
@@ -291,18 +1169,109 @@ public class MetadataService extends DvService implements ServiceVdbGenerator.Sc
             connectionExecutor.execute(()->{
                 try {
                     removeVdb(getWorkspaceSourceVdbName(dsd.getTeiidName()));
-                    refreshPreviewVdb();
                 } catch (KException e) {
                     LOGGER.warn("Error removing the source vdb", e); //$NON-NLS-1$
                 }
+                changedSources.add(dsd.getTeiidName());
+                previewRefresh.request();
             });
         }
 
         return result;
     }
 
+    @PreDestroy
+    void shutdown() {
+        previewDeployExecutor.shutdownNow();
+    }
+
+    /**
+     * Called once the syndesis sources have been synchronized.  The first time, the
+     * master preview vdb is refreshed and then the preview vdbs of the most recently
+     * modified virtualizations are deployed in the background so that the first access
+     * is not slowed by the deployment.
+     */
+    public void sourcesSynchronized() {
+        if (warmCount <= 0 || !firstSynchronization.compareAndSet(false, true)) {
+            return;
+        }
+        warmPending.set(true);
+        previewRefresh.request();
+    }
+
+    /**
+     * Deploy the preview vdbs of the most recently modified virtualizations with
+     * the preview deploy executor, at most warmParallelism at a time
+     */
+    void warmPreviewVdbs() {
+        List<String> dvNames;
+        try {
+            //don't warm more than will be kept
+            int count = Math.min(warmCount, previewVdbTracker.getMaxVdbs());
+            dvNames = repositoryManager.runInTransaction(true, () -> repositoryManager.findRecentlyModifiedDataVirtualizationNames(count));
+        } catch (Exception e) {
+            LOGGER.warn("Could not determine the preview vdbs to warm", e); //$NON-NLS-1$
+            return;
+        }
+        if (dvNames.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Queue<String> pending = new ConcurrentLinkedQueue<>(dvNames);
+        AtomicInteger remaining = new AtomicInteger(dvNames.size());
+        AtomicInteger deployed = new AtomicInteger();
+        for (int i = 0; i < Math.max(1, warmParallelism); i++) {
+            warmNext(pending, () -> {
+                if (remaining.decrementAndGet() == 0) {
+                    LOGGER.info("Warmed %s of %s preview vdbs in %s ms", deployed.get(), dvNames.size(), elapsedMillis(start)); //$NON-NLS-1$
+                }
+            }, deployed);
+        }
+    }
+
+    /**
+     * Start the deployment of the next pending preview vdb, which starts the one
+     * after that once it completes.  Deployments are shared with requests.
+     */
+    private void warmNext(Queue<String> pending, Runnable onComplete, AtomicInteger deployed) {
+        String dvName = pending.poll();
+        if (dvName == null) {
+            return;
+        }
+        startPreviewDeployment(dvName).future.whenComplete((vdb, e) -> {
+            if (e != null) {
+                LOGGER.warn("Could not warm the preview vdb for %s", e, dvName); //$NON-NLS-1$
+            } else {
+                deployed.incrementAndGet();
+            }
+            onComplete.run();
+            warmNext(pending, onComplete, deployed);
+        });
+    }
+
     @PostConstruct
     void init() {
+        previewDeployExecutor = new ThreadPoolExecutor(deployThreads, deployThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("preview-deploy-")); //$NON-NLS-1$
+        previewDeployExecutor.allowCoreThreadTimeOut(true);
+        previewRefresh = new DebouncedTask(connectionExecutor, () -> {
+            try {
+                refreshPreviewVdb();
+            } catch (KException e) {
+                LOGGER.error("could not refresh preview vdb", e); //$NON-NLS-1$
+                return;
+            }
+            //the warm up waits for the master preview vdb to reflect the synchronized sources
+            if (warmPending.compareAndSet(true, false)) {
+                warmPreviewVdbs();
+            }
+        }, refreshWindowMillis, refreshMaxDelayMillis);
+        long idleSeconds = previewVdbTracker.getIdleSeconds();
+        if (idleSeconds > 0) {
+            long period = Math.max(1, idleSeconds/4);
+            connectionExecutor.scheduleWithFixedDelay(() -> evictPreviewVdbs(previewVdbTracker.removeIdle()),
+                    period, period, TimeUnit.SECONDS);
+        }
         //create an initial dummy preview vdb
         try {
             refreshPreviewVdb();
@@ -312,6 +1281,12 @@ public class MetadataService extends DvService implements ServiceVdbGenerator.Sc
         this.metadataInstance.addVDBLifeCycleListener(new VDBLifeCycleListener() {
             @Override
             public void finishedDeployment(String name, CompositeVDB vdb) {
+                if (name.endsWith(StringConstants.SERVICE_VDB_SUFFIX)
+                        && vdb.getVDB().getStatus() == Status.ACTIVE) {
+                    String dvName = getVirtualizationName(name);
+                    connectionExecutor.execute(() -> recordViewDependencies(dvName));
+                    return;
+                }
                 if (!name.endsWith(LOAD_SUFFIX)
                         //we remove inline, but will receive another event for this
                         //if we don't filter
@@ -372,6 +1347,89 @@ public class MetadataService extends DvService implements ServiceVdbGenerator.Sc
         });
     }
 
+    /**
+     * Save the source tables that each view of the loaded preview vdb reads from
+     */
+    void recordViewDependencies(String dvName) {
+        try {
+            TeiidVdb vdb = getMetadataInstance().getVdb(DataVirtualization.getPreviewVdbName(dvName));
+            if (vdb == null || !vdb.hasLoaded()) {
+                return;
+            }
+            Schema schema = vdb.getSchema(dvName);
+            if (schema == null) {
+                return;
+            }
+            Map<String, Set<String>> viewSourcePaths = getViewSourcePaths(schema);
+            repositoryManager.runInTransaction(false, () -> {
+                for (Map.Entry<String, Set<String>> entry : viewSourcePaths.entrySet()) {
+                    ViewDefinition viewDefinition = repositoryManager.findViewDefinitionByNameIgnoreCase(dvName, entry.getKey());
+                    if (viewDefinition != null) {
+                        repositoryManager.updateViewDependencies(viewDefinition, entry.getValue());
+                    }
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            LOGGER.warn("Could not record the view dependencies of %s", e, dvName); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * @return the paths of the source tables read by each view of the schema, including those read
+     * through other views of the schema
+     */
+    static Map<String, Set<String>> getViewSourcePaths(Schema schema) {
+        Map<String, Set<String>> result = new LinkedHashMap<>();
+        for (Table view : schema.getTables().values()) {
+            Set<String> sourcePaths = new TreeSet<>();
+            addSourcePaths(schema, view, sourcePaths, new HashSet<>());
+            result.put(view.getName(), sourcePaths);
+        }
+        return result;
+    }
+
+    private static void addSourcePaths(Schema schema, Table view, Set<String> sourcePaths, Set<Table> visited) {
+        if (!visited.add(view)) {
+            return;
+        }
+        for (AbstractMetadataRecord r : view.getIncomingObjects()) {
+            if (!(r instanceof Table) || ((Table)r).isSystem()) {
+                continue;
+            }
+            if (r.getParent() == schema) {
+                addSourcePaths(schema, (Table)r, sourcePaths, visited);
+                continue;
+            }
+            FullyQualifiedName fqn = new FullyQualifiedName(Schema.getTypeName(), r.getParent().getName());
+            fqn.append(Schema.getChildType(Table.class), r.getName());
+            sourcePaths.add(fqn.toString());
+        }
+    }
+
+    /**
+     * @param teiidSourceName the name of the source
+     * @param tableName the optional name of a table of the source
+     * @return the views that read from the source
+     * @throws Exception
+     */
+    @RequestMapping(value = TEIID_SOURCE_PLACEHOLDER + FS + V1Constants.IMPACT_SEGMENT, method = RequestMethod.GET, produces = { MediaType.APPLICATION_JSON_VALUE })
+    @ApiOperation( value = "Get the views that read from the teiid source, and would be affected by a change to it",
+                   response = ViewDefinition.class,
+                   responseContainer =  "List")
+    @ApiResponses( value = {
+        @ApiResponse( code = 403, message = "An error has occurred." ),
+        @ApiResponse( code = 406, message = "Only JSON is returned by this operation" )
+    } )
+    public List<ViewDefinition> getImpact(@ApiParam( value = "Name of the teiid source", required = true )
+                               @PathVariable(TEIID_SOURCE) final String teiidSourceName,
+                               @ApiParam( value = "Name of a table of the teiid source" )
+                               @RequestParam(value = "table", required = false) final String tableName) throws Exception {
+        return repositoryManager.runInTransaction(true, () -> {
+            return new ArrayList<ViewDefinition>(repositoryManager.findViewDefinitionsBySourceTable(teiidSourceName, tableName));
+        });
+    }
+
     /**
      * @param teiidSourceName  the name of the source whose tables are being requested (cannot be empty)
      * @return the JSON representation of the tables collection (never <code>null</code>)
@@ -495,7 +1553,8 @@ public class MetadataService extends DvService implements ServiceVdbGenerator.Sc
     @RequestMapping(value = V1Constants.RUNTIME_METADATA + StringConstants.FS
             + V1Constants.VIRTUALIZATION_PLACEHOLDER, method = RequestMethod.GET, produces = { MediaType.APPLICATION_JSON_VALUE })
     @ApiOperation(value = "Get Source Schema for a Virtualization", response = RestViewSourceInfo.class)
-    @ApiResponses(value = { @ApiResponse(code = 406, message = "Only JSON is returned by this operation"),
+    @ApiResponses(value = { @ApiResponse(code = 202, message = "The preview vdb is loading, poll the location for its status", response = RestPreviewVdbStatus.class),
+            @ApiResponse(code = 406, message = "Only JSON is returned by this operation"),
             @ApiResponse(code = 403, message = "An error has occurred.") })
     public RestViewSourceInfo getRuntimeMetadata(
             @ApiParam( value = "Name of the data virtualization", required = true )
@@ -508,10 +1567,7 @@ public class MetadataService extends DvService implements ServiceVdbGenerator.Sc
 
         List<RestSourceSchema> srcSchemas = new ArrayList<>();
 
-        TeiidVdb vdb = updatePreviewVdb(virtualization);
-        if (vdb == null || !vdb.hasLoaded()) {
-            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE);
-        }
+        TeiidVdb vdb = getLoadedPreviewVdb(virtualization);
 
         for (TeiidDataSource dataSource : getMetadataInstance().getDataSources()) {
             Schema s = vdb.getSchema(dataSource.getName());
@@ -605,13 +1661,9 @@ public class MetadataService extends DvService implements ServiceVdbGenerator.Sc
 
         if (ddl != null) {
             //this is the actual connection vdb, trigger a load of the preview vdbs
-            connectionExecutor.execute(()->{
-                try {
-                    refreshPreviewVdb();
-                } catch (Exception e) {
-                    LOGGER.error("could not refresh preview vdb", e); //$NON-NLS-1$
-                }
-            });
+            //bursts of source deployments result in a single refresh
+            changedSources.add(teiidSource.getName());
+            previewRefresh.request();
         }
     }
 
@@ -0,0 +1,47 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import java.net.URI;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import io.syndesis.dv.server.V1Constants;
+
+/**
+ * Responds to requests waiting on a preview vdb deployment with 202 Accepted,
+ * the current status, and the location of the status endpoint to poll
+ */
+@ControllerAdvice
+public class PreviewVdbExceptionHandler {
+
+    @ExceptionHandler(PreviewVdbLoadingException.class)
+    public ResponseEntity<RestPreviewVdbStatus> handlePreviewVdbLoading(PreviewVdbLoadingException e) {
+        RestPreviewVdbStatus status = e.getStatus();
+        URI location = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path(V1Constants.APP_PATH)
+                .pathSegment(V1Constants.METADATA_SEGMENT, V1Constants.PREVIEW_STATUS, status.getName())
+                .build()
+                .toUri();
+        return ResponseEntity.accepted().location(location).body(status);
+    }
+
+}
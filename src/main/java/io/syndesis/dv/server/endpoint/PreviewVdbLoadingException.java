@@ -0,0 +1,40 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+/**
+ * Thrown when a request needs the metadata of a preview vdb that
+ * is still being deployed or loaded.  The response is 202 Accepted
+ * with the status of the deployment, see {@link PreviewVdbExceptionHandler}
+ */
+public class PreviewVdbLoadingException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final RestPreviewVdbStatus status;
+
+    public PreviewVdbLoadingException(RestPreviewVdbStatus status) {
+        super("The preview vdb for " + status.getName() + " is " + status.getState()); //$NON-NLS-1$ //$NON-NLS-2$
+        this.status = status;
+    }
+
+    public RestPreviewVdbStatus getStatus() {
+        return status;
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.teiid.deployers.CompositeVDB;
+import org.teiid.deployers.VDBLifeCycleListener;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.syndesis.dv.StringConstants;
+import io.syndesis.dv.metadata.MetadataInstance;
+
+/**
+ * Tracks access to the virtualization preview vdbs in LRU order so that
+ * cold vdbs can be undeployed once the count budget is exceeded or they
+ * have been idle longer than the idle time.  They are redeployed on demand
+ * on the next access.
+ * <br>
+ * This only selects what to evict, the caller is responsible for the undeployment.
+ */
+@Component
+public class PreviewVdbTracker implements MeterBinder {
+
+    @Value("${teiid.syndesis.preview.max-vdbs:100}")
+    private int maxVdbs = 100;
+
+    @Value("${teiid.syndesis.preview.idle-seconds:1800}")
+    private long idleSeconds = 1800;
+
+    @Autowired
+    private MetadataInstance metadataInstance;
+
+    /**
+     * dv name to last access time, in access order
+     */
+    private Map<String, Long> lastAccess = new LinkedHashMap<>(16, .75f, true);
+
+    private AtomicLong budgetEvictions = new AtomicLong();
+    private AtomicLong idleEvictions = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        metadataInstance.addVDBLifeCycleListener(new VDBLifeCycleListener() {
+            @Override
+            public void removed(String name, CompositeVDB vdb) {
+                if (name.endsWith(StringConstants.SERVICE_VDB_SUFFIX)) {
+                    remove(name.substring(0, name.length() - StringConstants.SERVICE_VDB_SUFFIX.length()));
+                }
+            }
+        });
+    }
+
+    /**
+     * Record an access to the preview vdb of the virtualization
+     * @param dvName
+     * @return the least recently used virtualizations whose preview vdbs
+     * should be evicted to stay within the budget
+     */
+    public synchronized List<String> touch(String dvName) {
+        lastAccess.put(dvName, System.currentTimeMillis());
+        if (lastAccess.size() <= maxVdbs) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        for (Iterator<String> iter = lastAccess.keySet().iterator(); lastAccess.size() > maxVdbs && iter.hasNext();) {
+            String eldest = iter.next();
+            if (eldest.equals(dvName)) {
+                continue;
+            }
+            iter.remove();
+            result.add(eldest);
+        }
+        budgetEvictions.addAndGet(result.size());
+        return result;
+    }
+
+    /**
+     * @return the virtualizations whose preview vdbs have been idle longer than the idle time
+     */
+    public synchronized List<String> removeIdle() {
+        if (idleSeconds <= 0) {
+            return Collections.emptyList();
+        }
+        long expired = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(idleSeconds);
+        List<String> result = new ArrayList<>();
+        for (Iterator<Map.Entry<String, Long>> iter = lastAccess.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<String, Long> entry = iter.next();
+            if (entry.getValue() >= expired) {
+                //the remaining entries are more recent
+                break;
+            }
+            iter.remove();
+            result.add(entry.getKey());
+        }
+        idleEvictions.addAndGet(result.size());
+        return result;
+    }
+
+    public synchronized boolean isTracked(String dvName) {
+        return lastAccess.containsKey(dvName);
+    }
+
+    public synchronized void remove(String dvName) {
+        lastAccess.remove(dvName);
+    }
+
+    public synchronized int getTrackedCount() {
+        return lastAccess.size();
+    }
+
+    int getMaxVdbs() {
+        return maxVdbs;
+    }
+
+    long getIdleSeconds() {
+        return idleSeconds;
+    }
+
+    long getBudgetEvictions() {
+        return budgetEvictions.get();
+    }
+
+    long getIdleEvictions() {
+        return idleEvictions.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("dv.preview.vdbs", this, PreviewVdbTracker::getTrackedCount) //$NON-NLS-1$
+            .description("virtualization preview vdbs currently deployed") //$NON-NLS-1$
+            .register(registry);
+        FunctionCounter.builder("dv.preview.vdbs.evicted", this, PreviewVdbTracker::getBudgetEvictions) //$NON-NLS-1$
+            .description("cold preview vdbs undeployed") //$NON-NLS-1$
+            .tag("reason", "budget") //$NON-NLS-1$ //$NON-NLS-2$
+            .register(registry);
+        FunctionCounter.builder("dv.preview.vdbs.evicted", this, PreviewVdbTracker::getIdleEvictions) //$NON-NLS-1$
+            .description("cold preview vdbs undeployed") //$NON-NLS-1$
+            .tag("reason", "idle") //$NON-NLS-1$ //$NON-NLS-2$
+            .register(registry);
+    }
+
+}
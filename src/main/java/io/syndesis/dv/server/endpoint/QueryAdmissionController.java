@@ -0,0 +1,220 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Limits the number of concurrent preview queries for each virtualization
+ * and each source.  Requests beyond the limit wait in a bounded queue,
+ * and are rejected with {@link HttpStatus#TOO_MANY_REQUESTS} when the
+ * queue is full or the wait times out.
+ */
+@Component
+public class QueryAdmissionController implements MeterBinder {
+
+    enum Kind {
+        VIRTUALIZATION,
+        SOURCE;
+    }
+
+    /**
+     * A held admission, which must be closed to release
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static class Gate {
+        private final Semaphore semaphore;
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        Gate(int permits) {
+            this.semaphore = new Semaphore(permits, true);
+        }
+    }
+
+    private class KindStats {
+        private final Kind kind;
+        private final ConcurrentHashMap<String, Gate> gates = new ConcurrentHashMap<>();
+        private final AtomicLong waits = new AtomicLong();
+        private final AtomicLong waitNanos = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+
+        KindStats(Kind kind) {
+            this.kind = kind;
+        }
+
+        Gate getGate(String name) {
+            return gates.computeIfAbsent(name, k -> new Gate(
+                    kind == Kind.VIRTUALIZATION ? maxPerVirtualization : maxPerSource));
+        }
+
+        int getWaiting() {
+            int result = 0;
+            for (Gate gate : gates.values()) {
+                result += gate.waiting.get();
+            }
+            return result;
+        }
+
+        int getActive() {
+            int max = kind == Kind.VIRTUALIZATION ? maxPerVirtualization : maxPerSource;
+            int result = 0;
+            for (Gate gate : gates.values()) {
+                result += max - gate.semaphore.availablePermits();
+            }
+            return result;
+        }
+    }
+
+    @Value("${teiid.syndesis.query.max-concurrent-per-virtualization:4}")
+    private int maxPerVirtualization = 4;
+
+    @Value("${teiid.syndesis.query.max-concurrent-per-source:8}")
+    private int maxPerSource = 8;
+
+    @Value("${teiid.syndesis.query.max-queued:16}")
+    private int maxQueued = 16;
+
+    @Value("${teiid.syndesis.query.admission-timeout-millis:30000}")
+    private long timeoutMillis = 30000;
+
+    private KindStats virtualizations = new KindStats(Kind.VIRTUALIZATION);
+    private KindStats sources = new KindStats(Kind.SOURCE);
+
+    /**
+     * Acquire permits for the virtualization and all of the given sources.
+     * @throws ResponseStatusException with {@link HttpStatus#TOO_MANY_REQUESTS} if
+     * permits cannot be acquired
+     */
+    public Permit acquire(String virtualization, Collection<String> sourceNames) throws InterruptedException {
+        List<Semaphore> held = new ArrayList<>();
+        boolean success = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            held.add(acquire(virtualizations, virtualization, deadline));
+            //use a consistent order to prevent deadlocks
+            for (String source : new TreeSet<>(sourceNames)) {
+                held.add(acquire(sources, source, deadline));
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                release(held);
+            }
+        }
+        AtomicInteger released = new AtomicInteger();
+        return () -> {
+            if (released.getAndIncrement() == 0) {
+                release(held);
+            }
+        };
+    }
+
+    private Semaphore acquire(KindStats stats, String name, long deadline) throws InterruptedException {
+        Gate gate = stats.getGate(name);
+        if (gate.semaphore.tryAcquire()) {
+            return gate.semaphore;
+        }
+        if (gate.waiting.incrementAndGet() > maxQueued) {
+            gate.waiting.decrementAndGet();
+            throw reject(stats, name);
+        }
+        long start = System.nanoTime();
+        try {
+            if (!gate.semaphore.tryAcquire(Math.max(0, deadline - start), TimeUnit.NANOSECONDS)) {
+                throw reject(stats, name);
+            }
+        } finally {
+            gate.waiting.decrementAndGet();
+            stats.waits.incrementAndGet();
+            stats.waitNanos.addAndGet(System.nanoTime() - start);
+        }
+        return gate.semaphore;
+    }
+
+    private ResponseStatusException reject(KindStats stats, String name) {
+        stats.rejected.incrementAndGet();
+        return new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                "Too many concurrent queries for " + stats.kind.name().toLowerCase() + " " + name); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private static void release(List<Semaphore> held) {
+        for (Semaphore s : held) {
+            s.release();
+        }
+    }
+
+    int getWaiting(Kind kind) {
+        return getStats(kind).getWaiting();
+    }
+
+    int getActive(Kind kind) {
+        return getStats(kind).getActive();
+    }
+
+    private KindStats getStats(Kind kind) {
+        return kind == Kind.VIRTUALIZATION ? virtualizations : sources;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (KindStats stats : new KindStats[] {virtualizations, sources}) {
+            String kind = stats.kind.name().toLowerCase();
+            Gauge.builder("dv.query.admission.queued", stats, KindStats::getWaiting) //$NON-NLS-1$
+                .tag("kind", kind) //$NON-NLS-1$
+                .description("preview queries waiting for admission") //$NON-NLS-1$
+                .register(registry);
+            Gauge.builder("dv.query.admission.active", stats, KindStats::getActive) //$NON-NLS-1$
+                .tag("kind", kind) //$NON-NLS-1$
+                .description("admitted preview queries") //$NON-NLS-1$
+                .register(registry);
+            FunctionTimer.builder("dv.query.admission.wait", stats, //$NON-NLS-1$
+                    s -> s.waits.get(), s -> s.waitNanos.get(), TimeUnit.NANOSECONDS)
+                .tag("kind", kind) //$NON-NLS-1$
+                .description("time preview queries waited for admission") //$NON-NLS-1$
+                .register(registry);
+            FunctionCounter.builder("dv.query.admission.rejected", stats, s -> s.rejected.get()) //$NON-NLS-1$
+                .tag("kind", kind) //$NON-NLS-1$
+                .description("preview queries rejected by admission control") //$NON-NLS-1$
+                .register(registry);
+        }
+    }
+
+}
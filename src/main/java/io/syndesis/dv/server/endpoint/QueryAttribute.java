@@ -37,6 +37,14 @@ public class QueryAttribute {
 
     private int offset = 0;
 
+    private boolean cursor;
+
+    private boolean cache;
+
+    private boolean statistics;
+
+    private boolean lobs;
+
     /**
      * Default constructor for deserialization
      */
@@ -100,13 +108,74 @@ public class QueryAttribute {
         this.offset = offset;
     }
 
+    /**
+     * @return true if the results should be read through a server side cursor
+     */
+    public boolean isCursor() {
+        return cursor;
+    }
+
+    /**
+     * @param cursor true if the limit should be used as a page size over a server side cursor
+     */
+    public void setCursor(boolean cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return true if a cached result may be returned
+     */
+    public boolean isCache() {
+        return cache;
+    }
+
+    /**
+     * @param cache true if a cached result for the same virtualization version may be returned
+     */
+    public void setCache(boolean cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @return true if execution statistics and the query plan should be returned
+     */
+    public boolean isStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @param statistics true if execution statistics and the query plan should be returned
+     */
+    public void setStatistics(boolean statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * @return true if large object values should be spooled so that they can be retrieved
+     */
+    public boolean isLobs() {
+        return lobs;
+    }
+
+    /**
+     * @param lobs true if large object values should be spooled and returned as references,
+     * rather than as placeholders
+     */
+    public void setLobs(boolean lobs) {
+        this.lobs = lobs;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
         int result = 1;
+        result = prime * result + (cache ? 1231 : 1237);
+        result = prime * result + (cursor ? 1231 : 1237);
         result = prime * result + limit;
+        result = prime * result + (lobs ? 1231 : 1237);
         result = prime * result + offset;
         result = prime * result + ((query == null) ? 0 : query.hashCode());
+        result = prime * result + (statistics ? 1231 : 1237);
         result = prime * result + ((target == null) ? 0 : target.hashCode());
         return result;
     }
@@ -120,10 +189,18 @@ public class QueryAttribute {
         if (getClass() != obj.getClass())
             return false;
         QueryAttribute other = (QueryAttribute)obj;
+        if (cache != other.cache)
+            return false;
+        if (cursor != other.cursor)
+            return false;
         if (limit != other.limit)
             return false;
+        if (lobs != other.lobs)
+            return false;
         if (offset != other.offset)
             return false;
+        if (statistics != other.statistics)
+            return false;
         if (query == null) {
             if (other.query != null)
                 return false;
@@ -139,6 +216,6 @@ public class QueryAttribute {
 
     @Override
     public String toString() {
-        return "KomodoQueryAttribute [query=" + query + ", target=" + target + ", limit=" + limit + ", offset=" + offset + "]";
+        return "KomodoQueryAttribute [query=" + query + ", target=" + target + ", limit=" + limit + ", offset=" + offset + ", cursor=" + cursor + ", cache=" + cache + ", statistics=" + statistics + ", lobs=" + lobs + "]";
     }
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.syndesis.dv.KException;
+import io.syndesis.dv.metadata.query.QSResult;
+
+/**
+ * Shares a single in-flight execution between concurrent identical
+ * preview queries.  Nothing is retained once the execution completes.
+ */
+@Component
+public class QueryCoalescer implements MeterBinder {
+
+    private ConcurrentHashMap<QueryKey, CompletableFuture<QSResult>> inFlight = new ConcurrentHashMap<>();
+
+    private AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Run the task, or if an identical task is already running, wait for
+     * and return its result.
+     */
+    public QSResult execute(QueryKey key, Callable<QSResult> task) throws Exception {
+        CompletableFuture<QSResult> future = new CompletableFuture<>();
+        CompletableFuture<QSResult> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            try {
+                return existing.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception)cause;
+                }
+                throw new KException(cause);
+            }
+        }
+        try {
+            QSResult result = task.call();
+            future.complete(result);
+            return result;
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            throw e;
+        } catch (Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("dv.query.coalesced", this, QueryCoalescer::getCoalescedCount) //$NON-NLS-1$
+            .description("preview queries that shared an in-flight execution") //$NON-NLS-1$
+            .register(registry);
+    }
+
+}
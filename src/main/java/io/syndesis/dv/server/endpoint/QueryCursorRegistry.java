@@ -0,0 +1,260 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.syndesis.dv.KException;
+import io.syndesis.dv.metadata.query.QSColumn;
+import io.syndesis.dv.metadata.query.QSCursor;
+import io.syndesis.dv.metadata.query.QSResult;
+import io.syndesis.dv.metadata.query.QSRow;
+import io.syndesis.dv.server.DvService;
+import io.syndesis.dv.server.endpoint.QueryAdmissionController.Permit;
+import io.syndesis.dv.utils.KLog;
+
+/**
+ * Holds open query cursors so that subsequent pages can be read from the
+ * existing result set rather than re-executing the query with a new offset.
+ * <br>
+ * Query admission is only held while the query is executed and while each
+ * page is read, so that idle cursors do not block other queries.
+ * <br>
+ * Sessions are closed once exhausted, explicitly, or after being idle
+ * longer than the ttl.
+ */
+@Component
+public class QueryCursorRegistry {
+
+    /**
+     * Executes the query for a cursor once a slot has been reserved
+     */
+    @FunctionalInterface
+    public interface CursorFactory {
+        QSCursor open() throws Exception;
+    }
+
+    /**
+     * Acquires the query admission for executing or reading a page
+     */
+    @FunctionalInterface
+    public interface Admission {
+        Permit acquire() throws InterruptedException;
+    }
+
+    private static class CursorSession {
+        private final QSCursor cursor;
+        private final Admission admission;
+        private final Semaphore slots;
+        private QSRow pending;
+        private volatile long lastAccess = System.currentTimeMillis();
+        private boolean closed;
+
+        CursorSession(QSCursor cursor, Admission admission, Semaphore slots) {
+            this.cursor = cursor;
+            this.admission = admission;
+            this.slots = slots;
+        }
+
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending = null;
+            try {
+                cursor.close();
+            } finally {
+                slots.release();
+            }
+        }
+    }
+
+    private Map<String, CursorSession> sessions = new ConcurrentHashMap<>();
+
+    @Value("${teiid.syndesis.query.cursor-ttl-seconds:300}")
+    private long ttlSeconds = 300;
+
+    @Value("${teiid.syndesis.query.max-cursors:50}")
+    private int maxCursors = 50;
+
+    /**
+     * Reserved before the query is executed so that the limit is never exceeded
+     */
+    private Semaphore slots;
+
+    @Autowired
+    private ScheduledThreadPoolExecutor connectionExecutor;
+
+    @PostConstruct
+    void init() {
+        slots = new Semaphore(maxCursors);
+        long period = Math.max(1, ttlSeconds/2);
+        connectionExecutor.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (String id : sessions.keySet()) {
+            close(id);
+        }
+    }
+
+    /**
+     * Reserve a cursor slot, then open the cursor and read the first page.
+     * If there are more rows the cursor is registered and the id returned
+     * with the result, otherwise the cursor is closed.
+     * @param factory executes the query, only called once a slot is reserved
+     * @param admission acquired while executing and reading each page
+     * @param pageSize
+     * @return the first page
+     * @throws Exception
+     * @throws ResponseStatusException with {@link HttpStatus#TOO_MANY_REQUESTS} if
+     * there are too many open cursors
+     */
+    public QSResult open(CursorFactory factory, Admission admission, int pageSize) throws Exception {
+        if (!slots.tryAcquire()) {
+            sweep();
+            if (!slots.tryAcquire()) {
+                throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                        "Too many open query cursors, close or finish reading an existing cursor"); //$NON-NLS-1$
+            }
+        }
+        CursorSession session = null;
+        try (Permit permit = admission.acquire()) {
+            session = new CursorSession(factory.open(), admission, slots);
+            String id = UUID.randomUUID().toString();
+            sessions.put(id, session);
+            return read(id, session, pageSize);
+        } finally {
+            if (session == null) {
+                slots.release();
+            }
+        }
+    }
+
+    /**
+     * Read the next page from the given cursor
+     * @param id
+     * @param pageSize
+     * @return the next page
+     * @throws KException
+     * @throws InterruptedException
+     * @throws ResponseStatusException if the cursor does not exist, or with
+     * {@link HttpStatus#TOO_MANY_REQUESTS} if the page is not admitted
+     */
+    public QSResult fetch(String id, int pageSize) throws KException, InterruptedException {
+        CursorSession session = sessions.get(id);
+        if (session == null) {
+            throw DvService.notFound(id);
+        }
+        //don't expire while waiting for admission
+        session.lastAccess = System.currentTimeMillis();
+        try (Permit permit = session.admission.acquire()) {
+            return read(id, session, pageSize);
+        }
+    }
+
+    private QSResult read(String id, CursorSession session, int pageSize) throws KException {
+        QSResult result = new QSResult();
+        synchronized (session) {
+            if (session.closed) {
+                //expired while waiting
+                throw DvService.notFound(id);
+            }
+            session.lastAccess = System.currentTimeMillis();
+            for (QSColumn column : session.cursor.getColumns()) {
+                result.addColumn(column);
+            }
+            try {
+                QSRow row = session.pending;
+                session.pending = null;
+                if (row == null) {
+                    row = session.cursor.next();
+                }
+                while (row != null) {
+                    result.addRow(row);
+                    if (result.getRows().size() >= pageSize) {
+                        //look ahead so that we know if there's another page
+                        session.pending = session.cursor.next();
+                        break;
+                    }
+                    row = session.cursor.next();
+                }
+            } catch (KException | RuntimeException e) {
+                close(id);
+                throw e;
+            }
+            if (session.pending == null) {
+                close(id);
+            } else {
+                result.setCursorId(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Close the given cursor
+     * @param id
+     * @return true if the cursor was open
+     */
+    public boolean close(String id) {
+        CursorSession session = sessions.remove(id);
+        if (session == null) {
+            return false;
+        }
+        session.close();
+        return true;
+    }
+
+    /**
+     * Close all sessions that have been idle longer than the ttl
+     */
+    void sweep() {
+        long expired = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(ttlSeconds);
+        for (Iterator<Map.Entry<String, CursorSession>> iter = sessions.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<String, CursorSession> entry = iter.next();
+            if (entry.getValue().lastAccess < expired) {
+                KLog.getLogger().debug("Closing idle query cursor %s", entry.getKey()); //$NON-NLS-1$
+                iter.remove();
+                entry.getValue().close();
+            }
+        }
+    }
+
+    int getOpenCursorCount() {
+        return sessions.size();
+    }
+
+}
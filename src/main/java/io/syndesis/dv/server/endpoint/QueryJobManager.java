@@ -0,0 +1,317 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.syndesis.dv.KException;
+import io.syndesis.dv.metadata.MetadataInstance;
+import io.syndesis.dv.metadata.query.QSColumn;
+import io.syndesis.dv.metadata.query.QSCursor;
+import io.syndesis.dv.metadata.query.QSOptions;
+import io.syndesis.dv.metadata.query.QSResult;
+import io.syndesis.dv.metadata.query.QSRow;
+import io.syndesis.dv.server.DvService;
+import io.syndesis.dv.server.endpoint.QueryAdmissionController.Permit;
+import io.syndesis.dv.server.endpoint.RestQueryJob.JobState;
+import io.syndesis.dv.utils.KLog;
+
+/**
+ * Runs preview queries asynchronously on a bounded executor so that
+ * web threads are not held for the duration of a slow query.
+ * <br>
+ * Jobs may be polled for partial results and cancelled.  Finished jobs
+ * are retained for the ttl so that the results can be retrieved, but only
+ * up to a count and an estimated result size - the oldest are removed first.
+ */
+@Component
+public class QueryJobManager {
+
+    private class QueryJob implements Runnable {
+        private final String id = UUID.randomUUID().toString();
+        private final String virtualization;
+        private final Collection<String> sources;
+        private final String vdbName;
+        private final String query;
+        private final int offset;
+        private final int limit;
+        private final QSOptions options = new QSOptions();
+
+        private final List<QSColumn> columns = new ArrayList<>();
+        private final List<QSRow> rows = new ArrayList<>();
+        private final AtomicReference<JobState> state = new AtomicReference<>(JobState.QUEUED);
+        private volatile String error;
+        private volatile long finished;
+        private volatile long bytes;
+
+        QueryJob(String virtualization, Collection<String> sources, String vdbName, String query, int offset, int limit,
+                boolean lobs) {
+            this.virtualization = virtualization;
+            this.sources = sources;
+            this.vdbName = vdbName;
+            this.query = query;
+            this.offset = offset;
+            this.limit = limit;
+            this.options.setTimeoutSeconds(timeoutSeconds);
+            //spooled values are subject to the same size and disk limits as other queries
+            this.options.setLobStore(lobs ? queryLobStore : null);
+        }
+
+        @Override
+        public void run() {
+            if (options.isCancelled() || state.get() != JobState.QUEUED) {
+                return;
+            }
+            try (Permit permit = queryAdmissionController.acquire(virtualization, sources);
+                    QSCursor cursor = openCursor()) {
+                synchronized (this) {
+                    columns.addAll(cursor.getColumns());
+                }
+                QSRow row = null;
+                while ((row = cursor.next()) != null) {
+                    synchronized (this) {
+                        rows.add(row);
+                        bytes += QueryResultCache.estimateSize(row);
+                    }
+                    if (bytes > maxBytes) {
+                        complete(JobState.FAILED, "The result exceeds the query job size limit of " + maxBytes + " bytes"); //$NON-NLS-1$ //$NON-NLS-2$
+                        return;
+                    }
+                }
+                complete(JobState.COMPLETED, null);
+            } catch (Exception e) {
+                if (options.isCancelled()) {
+                    complete(JobState.CANCELLED, null);
+                } else {
+                    KLog.getLogger().debug("Query job %s failed", e, id); //$NON-NLS-1$
+                    complete(JobState.FAILED, e instanceof ResponseStatusException
+                            ? ((ResponseStatusException)e).getReason() : e.getMessage());
+                }
+            }
+        }
+
+        private QSCursor openCursor() throws KException {
+            if (!state.compareAndSet(JobState.QUEUED, JobState.RUNNING)) {
+                throw new KException("Query job " + id + " is no longer queued"); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            return metadataInstance.openCursor(vdbName, query, offset, limit, options);
+        }
+
+        void complete(JobState finalState, String message) {
+            synchronized (this) {
+                JobState current = state.get();
+                while (!current.isDone()) {
+                    this.error = message;
+                    this.finished = System.currentTimeMillis();
+                    if (state.compareAndSet(current, finalState)) {
+                        break;
+                    }
+                    current = state.get();
+                }
+            }
+            evict();
+        }
+
+        synchronized RestQueryJob toRest() {
+            RestQueryJob result = new RestQueryJob(id, state.get());
+            result.setError(error);
+            if (!columns.isEmpty()) {
+                QSResult qsResult = new QSResult();
+                for (QSColumn column : columns) {
+                    qsResult.addColumn(column);
+                }
+                for (QSRow row : rows) {
+                    qsResult.addRow(row);
+                }
+                result.setResult(qsResult);
+            }
+            return result;
+        }
+    }
+
+    @Value("${teiid.syndesis.query.job-threads:4}")
+    private int threads = 4;
+
+    @Value("${teiid.syndesis.query.job-queue-size:20}")
+    private int queueSize = 20;
+
+    @Value("${teiid.syndesis.query.job-timeout-seconds:300}")
+    private int timeoutSeconds = 300;
+
+    @Value("${teiid.syndesis.query.job-ttl-seconds:600}")
+    private long ttlSeconds = 600;
+
+    /**
+     * the most finished jobs that are retained
+     */
+    @Value("${teiid.syndesis.query.job-max-retained:50}")
+    private int maxRetained = 50;
+
+    /**
+     * the estimated result bytes that may be held by all jobs
+     */
+    @Value("${teiid.syndesis.query.job-max-bytes:67108864}")
+    private long maxBytes = 67108864;
+
+    @Autowired
+    private MetadataInstance metadataInstance;
+
+    @Autowired
+    private QueryAdmissionController queryAdmissionController;
+
+    @Autowired
+    private QueryLobStore queryLobStore;
+
+    private ThreadPoolExecutor executor;
+
+    private Map<String, QueryJob> jobs = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueSize), new CustomizableThreadFactory("query-job-")); //$NON-NLS-1$
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Submit a query for asynchronous execution
+     * @param lobs true if large object values should be spooled rather than
+     * returned as placeholders
+     * @return the initial job status
+     * @throws ResponseStatusException with {@link HttpStatus#TOO_MANY_REQUESTS} if
+     * too many jobs are already pending
+     */
+    public RestQueryJob submit(String virtualization, Collection<String> sources,
+            String vdbName, String query, int offset, int limit, boolean lobs) {
+        sweep();
+        QueryJob job = new QueryJob(virtualization, sources, vdbName, query, offset, limit, lobs);
+        jobs.put(job.id, job);
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                    "Too many pending query jobs"); //$NON-NLS-1$
+        }
+        return job.toRest();
+    }
+
+    /**
+     * @return the current job status, with the results read so far
+     * @throws ResponseStatusException if the job does not exist
+     */
+    public RestQueryJob get(String id) {
+        return getJob(id).toRest();
+    }
+
+    /**
+     * Cancel the job and remove it
+     * @return the final job status
+     * @throws ResponseStatusException if the job does not exist
+     */
+    public RestQueryJob cancel(String id) {
+        QueryJob job = getJob(id);
+        try {
+            job.options.cancel();
+        } catch (SQLException e) {
+            KLog.getLogger().debug("Could not cancel query job %s", e, id); //$NON-NLS-1$
+        }
+        executor.remove(job);
+        job.complete(JobState.CANCELLED, null);
+        jobs.remove(id);
+        return job.toRest();
+    }
+
+    private QueryJob getJob(String id) {
+        QueryJob job = jobs.get(id);
+        if (job == null) {
+            throw DvService.notFound(id);
+        }
+        return job;
+    }
+
+    /**
+     * Remove finished jobs past the ttl
+     */
+    void sweep() {
+        long expired = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(ttlSeconds);
+        for (Iterator<QueryJob> iter = jobs.values().iterator(); iter.hasNext();) {
+            QueryJob job = iter.next();
+            if (job.state.get().isDone() && job.finished < expired) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove the oldest finished jobs beyond the retained count or size
+     */
+    synchronized void evict() {
+        List<QueryJob> finished = new ArrayList<>();
+        long totalBytes = 0;
+        for (QueryJob job : jobs.values()) {
+            totalBytes += job.bytes;
+            if (job.state.get().isDone()) {
+                finished.add(job);
+            }
+        }
+        finished.sort(Comparator.comparingLong(job -> job.finished));
+        int toRemove = finished.size() - maxRetained;
+        for (QueryJob job : finished) {
+            if (toRemove <= 0 && totalBytes <= maxBytes) {
+                break;
+            }
+            jobs.remove(job.id);
+            totalBytes -= job.bytes;
+            toRemove--;
+        }
+    }
+
+    int getJobCount() {
+        return jobs.size();
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import java.util.Objects;
+
+import org.teiid.api.exception.query.QueryParserException;
+import org.teiid.query.parser.QueryParser;
+
+/**
+ * Identifies a preview query execution - the preview vdb and its
+ * deployed version, the normalized sql, the requested window, and whether
+ * large objects are spooled.
+ */
+final class QueryKey {
+
+    private final String vdbName;
+    private final String version;
+    private final String sql;
+    private final int offset;
+    private final int limit;
+    private final boolean lobs;
+
+    QueryKey(String vdbName, String version, String sql, int offset, int limit) {
+        this(vdbName, version, sql, offset, limit, false);
+    }
+
+    QueryKey(String vdbName, String version, String sql, int offset, int limit, boolean lobs) {
+        this.vdbName = vdbName;
+        this.version = version;
+        this.sql = normalize(sql);
+        this.offset = offset;
+        this.limit = limit;
+        this.lobs = lobs;
+    }
+
+    /**
+     * Use the parser to remove insignificant differences in whitespace,
+     * case of keywords, etc.  If the sql does not parse, then it will
+     * fail on execution and the raw string is fine.
+     */
+    static String normalize(String sql) {
+        try {
+            return QueryParser.getQueryParser().parseCommand(sql).toString();
+        } catch (QueryParserException e) {
+            return sql.trim();
+        }
+    }
+
+    String getVdbName() {
+        return vdbName;
+    }
+
+    String getSql() {
+        return sql;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(vdbName, version, sql, offset, limit, lobs);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof QueryKey)) {
+            return false;
+        }
+        QueryKey other = (QueryKey) obj;
+        return offset == other.offset
+                && limit == other.limit
+                && lobs == other.lobs
+                && Objects.equals(vdbName, other.vdbName)
+                && Objects.equals(version, other.version)
+                && Objects.equals(sql, other.sql);
+    }
+
+    @Override
+    public String toString() {
+        return vdbName + "." + version + " " + sql + " [" + offset + ", " + limit + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+    }
+
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.google.common.io.ByteStreams;
+
+import io.syndesis.dv.metadata.query.QSLob;
+import io.syndesis.dv.metadata.query.QSLobStore;
+import io.syndesis.dv.server.DvService;
+import io.syndesis.dv.utils.KLog;
+
+/**
+ * Spools query result large objects to temporary files so that results only
+ * hold a reference, and the value can be streamed back with constant memory.
+ * <br>
+ * Each value is truncated to the max lob size, and nothing more is stored
+ * once the files held reach the disk budget.  Files are removed after the ttl.
+ */
+@Component
+public class QueryLobStore implements QSLobStore {
+
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    static class StoredLob {
+        private final Path path;
+        private final QSLob lob;
+        private final long created = System.currentTimeMillis();
+
+        StoredLob(Path path, QSLob lob) {
+            this.path = path;
+            this.lob = lob;
+        }
+
+        Path getPath() {
+            return path;
+        }
+
+        QSLob getLob() {
+            return lob;
+        }
+    }
+
+    private Map<String, StoredLob> lobs = new ConcurrentHashMap<>();
+
+    @Value("${teiid.syndesis.query.lob-ttl-seconds:300}")
+    private long ttlSeconds = 300;
+
+    /**
+     * the most bytes stored for a single value, the rest is truncated
+     */
+    @Value("${teiid.syndesis.query.lob-max-bytes:10485760}")
+    private long maxLobBytes = 10485760;
+
+    /**
+     * the most bytes stored for all values
+     */
+    @Value("${teiid.syndesis.query.lob-disk-budget:536870912}")
+    private long diskBudget = 536870912;
+
+    private AtomicLong usedBytes = new AtomicLong();
+
+    @Autowired
+    private ScheduledThreadPoolExecutor connectionExecutor;
+
+    private Path directory;
+
+    @PostConstruct
+    void init() throws IOException {
+        directory = Files.createTempDirectory("dv-lobs"); //$NON-NLS-1$
+        long period = Math.max(1, ttlSeconds/2);
+        connectionExecutor.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (String id : lobs.keySet()) {
+            remove(id);
+        }
+        try {
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            KLog.getLogger().debug("Could not remove the lob directory", e); //$NON-NLS-1$
+        }
+    }
+
+    @Override
+    public QSLob store(Blob blob) throws SQLException, IOException {
+        long allowed = reserve();
+        if (allowed <= 0) {
+            return null;
+        }
+        Path path = createFile();
+        boolean truncated = false;
+        try (InputStream is = blob.getBinaryStream();
+                OutputStream os = Files.newOutputStream(path)) {
+            ByteStreams.copy(ByteStreams.limit(is, allowed), os);
+            truncated = is.read() != -1;
+        } catch (SQLException | IOException | RuntimeException e) {
+            discard(path, allowed);
+            throw e;
+        }
+        return register(path, QSLob.BLOB, truncated, allowed);
+    }
+
+    @Override
+    public QSLob store(Clob clob) throws SQLException, IOException {
+        long allowed = reserve();
+        if (allowed <= 0) {
+            return null;
+        }
+        Path path = createFile();
+        boolean truncated = false;
+        try (Reader reader = clob.getCharacterStream();
+                Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            truncated = copyUtf8(reader, writer, allowed);
+        } catch (SQLException | IOException | RuntimeException e) {
+            discard(path, allowed);
+            throw e;
+        }
+        return register(path, QSLob.CLOB, truncated, allowed);
+    }
+
+    /**
+     * Copy the characters up to the given UTF-8 encoded length
+     * @return true if the value was truncated
+     */
+    static boolean copyUtf8(Reader reader, Writer writer, long maxBytes) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        long remaining = maxBytes;
+        int read = 0;
+        while ((read = reader.read(buffer)) != -1) {
+            int end = 0;
+            for (; end < read; end++) {
+                char c = buffer[end];
+                //a surrogate pair is 4 bytes
+                int size = c < 0x80 ? 1 : (c < 0x800 || Character.isSurrogate(c)) ? 2 : 3;
+                if (size > remaining) {
+                    break;
+                }
+                remaining -= size;
+            }
+            if (end < read) {
+                //don't split a surrogate pair
+                if (end > 0 && Character.isHighSurrogate(buffer[end - 1])) {
+                    end--;
+                }
+                writer.write(buffer, 0, end);
+                return true;
+            }
+            writer.write(buffer, 0, read);
+        }
+        return false;
+    }
+
+    /**
+     * Reserve space for a value against the disk budget
+     * @return the bytes reserved, or 0 if the budget is used
+     */
+    private long reserve() {
+        while (true) {
+            long used = usedBytes.get();
+            long allowed = Math.min(maxLobBytes, diskBudget - used);
+            if (allowed <= 0) {
+                return 0;
+            }
+            if (usedBytes.compareAndSet(used, used + allowed)) {
+                return allowed;
+            }
+        }
+    }
+
+    private void discard(Path path, long reserved) throws IOException {
+        usedBytes.addAndGet(-reserved);
+        Files.deleteIfExists(path);
+    }
+
+    private Path createFile() {
+        return directory.resolve(UUID.randomUUID().toString());
+    }
+
+    private QSLob register(Path path, String type, boolean truncated, long reserved) throws IOException {
+        long size = 0;
+        try {
+            size = Files.size(path);
+        } catch (IOException e) {
+            discard(path, reserved);
+            throw e;
+        }
+        //return the unused part of the reservation
+        usedBytes.addAndGet(size - reserved);
+        String id = path.getFileName().toString();
+        QSLob lob = new QSLob(id, type, size, truncated);
+        lobs.put(id, new StoredLob(path, lob));
+        return lob;
+    }
+
+    /**
+     * Get the stored lob
+     * @param id
+     * @return the stored lob
+     * @throws ResponseStatusException if the lob does not exist or has expired
+     */
+    StoredLob get(String id) {
+        StoredLob stored = lobs.get(id);
+        if (stored == null || !Files.exists(stored.getPath())) {
+            throw DvService.notFound(id);
+        }
+        return stored;
+    }
+
+    boolean remove(String id) {
+        StoredLob stored = lobs.remove(id);
+        if (stored == null) {
+            return false;
+        }
+        usedBytes.addAndGet(-stored.getLob().getLength());
+        try {
+            Files.deleteIfExists(stored.getPath());
+        } catch (IOException e) {
+            KLog.getLogger().debug("Could not remove the lob file %s", e, stored.getPath()); //$NON-NLS-1$
+        }
+        return true;
+    }
+
+    /**
+     * Remove all lobs older than the ttl
+     */
+    void sweep() {
+        long expired = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(ttlSeconds);
+        for (Iterator<Map.Entry<String, StoredLob>> iter = lobs.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<String, StoredLob> entry = iter.next();
+            if (entry.getValue().created < expired) {
+                remove(entry.getKey());
+            }
+        }
+    }
+
+    int getStoredCount() {
+        return lobs.size();
+    }
+
+    long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.teiid.deployers.CompositeVDB;
+import org.teiid.deployers.VDBLifeCycleListener;
+
+import io.syndesis.dv.metadata.MetadataInstance;
+import io.syndesis.dv.metadata.query.QSResult;
+import io.syndesis.dv.metadata.query.QSRow;
+
+/**
+ * An LRU cache of preview query results bounded by an estimate of the
+ * result memory size.
+ * <br>
+ * Keys include the preview vdb version, so a redeploy naturally misses.
+ * Entries for a vdb are also dropped as soon as it is removed.
+ */
+@Component
+public class QueryResultCache {
+
+    private static class Entry {
+        final QSResult result;
+        final long size;
+
+        Entry(QSResult result, long size) {
+            this.result = result;
+            this.size = size;
+        }
+    }
+
+    @Value("${teiid.syndesis.query.cache-max-bytes:33554432}")
+    private long maxBytes = 32 << 20;
+
+    @Autowired
+    private MetadataInstance metadataInstance;
+
+    private Map<QueryKey, Entry> entries = new LinkedHashMap<>(16, .75f, true);
+    private long currentBytes;
+
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        metadataInstance.addVDBLifeCycleListener(new VDBLifeCycleListener() {
+            @Override
+            public void removed(String name, CompositeVDB vdb) {
+                invalidate(name);
+            }
+        });
+    }
+
+    public QSResult get(QueryKey key) {
+        Entry entry = null;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.result;
+    }
+
+    public void put(QueryKey key, QSResult result) {
+        if (result.getCursorId() != null) {
+            return;
+        }
+        long size = estimateSize(result);
+        if (size > maxBytes) {
+            return;
+        }
+        synchronized (this) {
+            Entry old = entries.put(key, new Entry(result, size));
+            if (old != null) {
+                currentBytes -= old.size;
+            }
+            currentBytes += size;
+            for (Iterator<Entry> iter = entries.values().iterator(); currentBytes > maxBytes && iter.hasNext();) {
+                Entry eldest = iter.next();
+                iter.remove();
+                currentBytes -= eldest.size;
+            }
+        }
+    }
+
+    /**
+     * Remove all entries for the given vdb
+     * @param vdbName
+     */
+    public synchronized void invalidate(String vdbName) {
+        for (Iterator<Map.Entry<QueryKey, Entry>> iter = entries.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<QueryKey, Entry> entry = iter.next();
+            if (entry.getKey().getVdbName().equals(vdbName)) {
+                iter.remove();
+                currentBytes -= entry.getValue().size;
+            }
+        }
+    }
+
+    public synchronized long getSize() {
+        return currentBytes;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * A rough estimate of the heap used by the result
+     */
+    static long estimateSize(QSResult result) {
+        long size = 64 + 64 * result.getColumns().size();
+        for (QSRow row : result.getRows()) {
+            size += estimateSize(row);
+        }
+        return size;
+    }
+
+    /**
+     * A rough estimate of the heap used by the row
+     */
+    static long estimateSize(QSRow row) {
+        long size = 32;
+        for (Object value : row.getRow()) {
+            size += 8;
+            if (value instanceof String) {
+                size += 40 + 2 * ((String)value).length();
+            } else if (value != null) {
+                size += 24;
+            }
+        }
+        return size;
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * The deployment and metadata load status of a virtualization preview vdb
+ */
+@JsonSerialize(as = RestPreviewVdbStatus.class)
+@JsonInclude(Include.NON_NULL)
+public class RestPreviewVdbStatus {
+
+    public enum State {
+        /**
+         * No preview vdb has been deployed
+         */
+        NOT_DEPLOYED,
+        /**
+         * The preview vdb is being generated and deployed
+         */
+        DEPLOYING,
+        /**
+         * The preview vdb is deployed and its metadata is loading
+         */
+        LOADING,
+        /**
+         * The preview vdb metadata has loaded
+         */
+        LOADED,
+        /**
+         * The deployment or metadata load failed
+         */
+        FAILED
+    }
+
+    private String name;
+    private String vdbName;
+    private State state = State.NOT_DEPLOYED;
+    private String version;
+    private Long elapsedMillis;
+    private Map<String, String> models;
+    private List<String> errors;
+
+    /**
+     * Constructor for use in deserialization.
+     */
+    public RestPreviewVdbStatus() {
+        // nothing to do
+    }
+
+    public RestPreviewVdbStatus(String name, String vdbName) {
+        this.name = name;
+        this.vdbName = vdbName;
+    }
+
+    /**
+     * @return the virtualization name
+     */
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getVdbName() {
+        return vdbName;
+    }
+
+    public void setVdbName(String vdbName) {
+        this.vdbName = vdbName;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    /**
+     * @return the virtualization version of the deployed vdb
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    /**
+     * @return the time spent so far on the pending deployment
+     */
+    public Long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(Long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * @return the metadata status of each model by name
+     */
+    public Map<String, String> getModels() {
+        return models;
+    }
+
+    public void setModels(Map<String, String> models) {
+        this.models = models;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<String> errors) {
+        this.errors = errors;
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import io.syndesis.dv.metadata.query.QSResult;
+
+/**
+ * The status of an asynchronous query job, along with the results read so far
+ */
+@JsonSerialize(as = RestQueryJob.class)
+@JsonInclude(Include.NON_NULL)
+public class RestQueryJob {
+
+    /**
+     * Enumeration for the job state
+     */
+    public enum JobState {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED,
+        CANCELLED;
+
+        public boolean isDone() {
+            return this == COMPLETED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private String id;
+    private JobState state;
+    private String error;
+    private QSResult result;
+
+    /**
+     * Constructor for use in deserialization.
+     */
+    public RestQueryJob() {
+        // nothing to do
+    }
+
+    public RestQueryJob(String id, JobState state) {
+        this.id = id;
+        this.state = state;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public JobState getState() {
+        return state;
+    }
+
+    public void setState(JobState state) {
+        this.state = state;
+    }
+
+    /**
+     * @return the error message if the job failed
+     */
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    /**
+     * @return the results read so far - may be partial if the job is not yet completed
+     */
+    public QSResult getResult() {
+        return result;
+    }
+
+    public void setResult(QSResult result) {
+        this.result = result;
+    }
+
+}
@@ -17,15 +17,19 @@
  */
 package io.syndesis.dv.server.endpoint;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.TreeMap;
 
 import io.syndesis.dv.metadata.TeiidDataSource;
 import io.syndesis.dv.metadata.TeiidVdb;
@@ -48,6 +52,8 @@ import org.teiid.query.metadata.DDLConstants;
 import org.teiid.query.metadata.DDLStringVisitor;
 import org.teiid.query.sql.visitor.SQLStringVisitor;
 
+import com.google.common.hash.Hashing;
+
 import io.syndesis.dv.KException;
 import io.syndesis.dv.StringConstants;
 
@@ -87,6 +93,15 @@ public final class ServiceVdbGenerator implements StringConstants {
      */
     public static final String JOIN_FULL_OUTER = "FULL_OUTER_JOIN"; //$NON-NLS-1$
 
+    /**
+     * Prefix of the preview vdb properties holding the hash of each view's ddl
+     */
+    public static final String VIEW_HASH_PREFIX = "view-hash."; //$NON-NLS-1$
+    /**
+     * Preview vdb property holding the number of views included, absent if there are none
+     */
+    public static final String VIEW_COUNT = "view-count"; //$NON-NLS-1$
+
     private final SchemaFinder finder;
 
     /**
@@ -152,15 +167,7 @@ public final class ServiceVdbGenerator implements StringConstants {
             // Iterate tables for this schema, generating DDL
             String connectionName = entry.getKey().getName();
 
-            StringBuilder regex = new StringBuilder();
-            for ( Table table: entry.getValue() ) {
-                if (regex.length() > 0) {
-                    regex.append("|"); //$NON-NLS-1$
-                }
-                regex.append(Pattern.quote(table.getName()));
-            }
-
-            String ddl = DDLStringVisitor.getDDLString(entry.getKey(), EnumSet.of(SchemaObjectType.TABLES), regex.toString());
+            String ddl = getDDLString(entry.getKey(), entry.getValue());
 
             // Create a source model and set the DDL string via setModelDeinition(DDL)
             ModelMetaData srcModel = new ModelMetaData();
@@ -183,6 +190,50 @@ public final class ServiceVdbGenerator implements StringConstants {
 
     }
 
+    /**
+     * Get the DDL for only the given tables of the schema.
+     * <br>
+     * Only the given tables are visited, rather than matching every table of the
+     * schema against a name filter, which is costly for large sources.  The tables
+     * are written in the same order as the schema.
+     */
+    static String getDDLString(Schema schema, Set<Table> tables) {
+        return DDLStringVisitor.getDDLString(new TableSelection(schema, tables), EnumSet.of(SchemaObjectType.TABLES), null);
+    }
+
+    /**
+     * A schema view that exposes only the selected tables, which retain their actual parent
+     */
+    private static final class TableSelection extends Schema {
+
+        private static final long serialVersionUID = 1L;
+
+        private final NavigableMap<String, Table> selected;
+
+        TableSelection(Schema schema, Set<Table> tables) {
+            setName(schema.getName());
+            setPhysical(schema.isPhysical());
+            Map<String, Integer> positions = new HashMap<>();
+            for (Table table : schema.getTables().values()) {
+                if (tables.contains(table)) {
+                    positions.put(table.getName(), positions.size());
+                }
+            }
+            selected = new TreeMap<>(Comparator.comparing((String name) -> positions.getOrDefault(name, Integer.MAX_VALUE))
+                    .thenComparing(String.CASE_INSENSITIVE_ORDER));
+            for (Table table : tables) {
+                if (positions.containsKey(table.getName())) {
+                    selected.put(table.getName(), table);
+                }
+            }
+        }
+
+        @Override
+        public NavigableMap<String, Table> getTables() {
+            return selected;
+        }
+    }
+
     /**
      * This method creates a preview vdb, that includes all parsable sql and imports the base
      * preview vdb.  It is not guaranteed to be valid.
@@ -193,13 +244,17 @@ public final class ServiceVdbGenerator implements StringConstants {
 
         // Generate new model DDL by appending all view DDLs
         StringBuilder allViewDdl = new StringBuilder();
+        int viewCount = 0;
 
         for ( final ViewDefinition viewDef : editorStates ) {
-            if(!viewDef.isComplete() || !viewDef.isParsable()) {
+            if(!isPreviewable(viewDef)) {
                 continue;
             }
 
             String viewDdl = viewDef.getDdl();
+            //track what was deployed so that later changes may be applied incrementally
+            vdb.addProperty(VIEW_HASH_PREFIX + viewDef.getName(), getViewHash(viewDdl));
+            viewCount++;
             //we don't need an exhaustive check here,
             //the parser is tolerant to redundant semi-colons
             if (!viewDdl.endsWith(SEMI_COLON)) {
@@ -209,6 +264,9 @@ public final class ServiceVdbGenerator implements StringConstants {
         }
 
         addServiceModel(virtualizationName, vdb, allViewDdl);
+        if (viewCount > 0) {
+            vdb.addProperty(VIEW_COUNT, String.valueOf(viewCount));
+        }
 
         VDBImportMetadata vdbImport = new VDBImportMetadata();
         vdbImport.setVersion(DefaultMetadataInstance.DEFAULT_VDB_VERSION);
@@ -220,6 +278,17 @@ public final class ServiceVdbGenerator implements StringConstants {
         return vdb;
     }
 
+    /**
+     * @return true if the view is included in the preview vdb
+     */
+    public static boolean isPreviewable(ViewDefinition viewDef) {
+        return viewDef.isComplete() && viewDef.isParsable();
+    }
+
+    public static String getViewHash(String viewDdl) {
+        return Hashing.sha256().hashString(viewDdl, StandardCharsets.UTF_8).toString();
+    }
+
     private ModelMetaData addServiceModel(String virtualizationName, VDBMetaData vdb, StringBuilder allViewDdl) {
         ModelMetaData model = new ModelMetaData();
         model.setName(virtualizationName);
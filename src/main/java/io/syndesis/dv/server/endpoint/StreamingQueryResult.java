@@ -0,0 +1,90 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import io.syndesis.dv.KException;
+import io.syndesis.dv.metadata.query.QSCursor;
+import io.syndesis.dv.metadata.query.QSRow;
+
+/**
+ * Writes a {@link QSCursor} as newline delimited json.  The first line
+ * holds the columns, each subsequent line is a single row:
+ * <pre>
+ * {"columns":[{"type":"integer","name":"col","label":"col"}]}
+ * {"row":[1]}
+ * </pre>
+ * Only a single batch of rows is held at a time.  The cursor is closed
+ * once written.
+ */
+public class StreamingQueryResult implements StreamingResponseBody {
+
+    private static final char NEWLINE = '\n';
+
+    private final QSCursor cursor;
+    private final int batchSize;
+
+    public StreamingQueryResult(QSCursor cursor, int batchSize) {
+        this.cursor = cursor;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        JsonFactory jsonFactory = new JsonFactory();
+        jsonFactory.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        ObjectMapper mapper = new ObjectMapper(jsonFactory);
+        //we control the flushing per batch
+        mapper.disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        try (QSCursor c = cursor;
+                JsonGenerator gen = jsonFactory.createGenerator(out)) {
+            //the newline is the only separator
+            gen.setRootValueSeparator(null);
+            gen.writeStartObject();
+            gen.writeFieldName("columns"); //$NON-NLS-1$
+            mapper.writeValue(gen, c.getColumns());
+            gen.writeEndObject();
+            gen.writeRaw(NEWLINE);
+
+            int count = 0;
+            QSRow row = null;
+            while ((row = c.next()) != null) {
+                mapper.writeValue(gen, row);
+                gen.writeRaw(NEWLINE);
+                if (++count % batchSize == 0) {
+                    gen.flush();
+                }
+            }
+            gen.flush();
+        } catch (KException e) {
+            //the status has already been sent, so all we can do is abort the response
+            throw new IOException(e);
+        }
+    }
+
+}
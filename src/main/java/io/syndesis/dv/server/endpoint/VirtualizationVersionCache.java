@@ -0,0 +1,149 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.syndesis.dv.RepositoryManager;
+import io.syndesis.dv.utils.KLog;
+
+/**
+ * Holds the last known version of each virtualization so that the preview
+ * request path can avoid a database round trip when nothing has changed.
+ * <br>
+ * Local writes invalidate the entry, both immediately and once the transaction
+ * commits.  Changes made by other instances are picked up by polling the
+ * versions of all virtualizations, which bounds the staleness by the poll interval.
+ * <br>
+ * Entries read from the database are only cached if no invalidation happened since
+ * the read started, so an older version can't overwrite a newer invalidation.
+ */
+@Component
+public class VirtualizationVersionCache {
+
+    private static final KLog LOGGER = KLog.getLogger();
+
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private long stamp;
+
+    @Value("${teiid.syndesis.preview.version-poll-seconds:5}")
+    private long pollSeconds = 5;
+
+    @Autowired
+    private RepositoryManager repositoryManager;
+
+    @Autowired
+    private ScheduledThreadPoolExecutor connectionExecutor;
+
+    @PostConstruct
+    void init() {
+        if (pollSeconds > 0) {
+            connectionExecutor.scheduleWithFixedDelay(this::poll, pollSeconds, pollSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * @param dvName
+     * @return the cached version or null if it's not known
+     */
+    public Long get(String dvName) {
+        return versions.get(dvName);
+    }
+
+    /**
+     * @return the stamp to pass to {@link #put(String, Long, long)} - must be obtained
+     * prior to reading the version
+     */
+    public synchronized long getStamp() {
+        return stamp;
+    }
+
+    /**
+     * Cache the version if there have been no invalidations since the stamp was obtained
+     * @param dvName
+     * @param version
+     * @param readStamp
+     */
+    public synchronized void put(String dvName, Long version, long readStamp) {
+        if (readStamp == stamp && version != null) {
+            versions.put(dvName, version);
+        }
+    }
+
+    /**
+     * Called on local modification of the virtualization or its views.  If there is an
+     * active transaction the entry is also invalidated after commit.
+     * @param dvName
+     */
+    public void invalidate(String dvName) {
+        remove(dvName);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    remove(dvName);
+                }
+            });
+        }
+    }
+
+    private synchronized void remove(String dvName) {
+        stamp++;
+        versions.remove(dvName);
+    }
+
+    /**
+     * Refresh all versions from the repository
+     */
+    void poll() {
+        long readStamp = getStamp();
+        Map<String, Long> current = null;
+        try {
+            current = repositoryManager.runInTransaction(true, () -> {
+                return repositoryManager.findDataVirtualizationVersions();
+            });
+        } catch (Exception e) {
+            LOGGER.debug("Could not poll virtualization versions", e); //$NON-NLS-1$
+            return;
+        }
+        synchronized (this) {
+            if (readStamp != stamp) {
+                //something changed locally, try again next time
+                return;
+            }
+            versions.keySet().retainAll(current.keySet());
+            for (Map.Entry<String, Long> entry : current.entrySet()) {
+                if (entry.getValue() != null) {
+                    versions.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,12 @@
+-- the source tables read by each view, directly or through other views
+CREATE TABLE view_dependency 
+  ( 
+     view_id     VARCHAR(64) NOT NULL, 
+     dv_name     VARCHAR(255) NOT NULL, 
+     schema_name VARCHAR(255) NOT NULL, 
+     table_name  VARCHAR(255) NOT NULL, 
+     PRIMARY KEY (view_id, schema_name, table_name),
+     FOREIGN KEY (view_id) REFERENCES view_definition(id) ON DELETE CASCADE
+  ); 
+
+CREATE INDEX view_dependency_source ON view_dependency(schema_name, table_name);
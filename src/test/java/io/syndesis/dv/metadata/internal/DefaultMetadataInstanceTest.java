@@ -21,10 +21,17 @@ package io.syndesis.dv.metadata.internal;
 import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.syndesis.dv.metadata.MetadataInstance;
 import io.syndesis.dv.metadata.MetadataInstance.ValidationResult;
 import io.syndesis.dv.metadata.TeiidVdb;
 import io.syndesis.dv.metadata.internal.DefaultMetadataInstance.TeiidVdbImpl;
@@ -82,6 +89,31 @@ public class DefaultMetadataInstanceTest {
         assertTrue(report.toString(), report.getReport().hasItems());
     }
 
+    @Test
+    public void shouldCacheValidationResults() throws Exception {
+        ValidationResult parsed = metadataInstance.parse("create view v as select 1");
+        assertSame(parsed, metadataInstance.parse("create view v as select 1"));
+        assertNotSame(parsed, metadataInstance.parse("create view v as select 2"));
+        assertEquals(1, metadataInstance.getParseCache().getHitCount());
+
+        String vdb = "<vdb name=\"myservice\" version=\"1\">\n" +
+                "    <model visible=\"true\" name=\"accounts\" type=\"VIRTUAL\">\n" +
+                "      <metadata type=\"DDL\">create view tbl (col) as select 1;</metadata>" +
+                "    </model>    \n" +
+                "</vdb>";
+
+        metadataInstance.deploy(VDBMetadataParser.unmarshell(new ByteArrayInputStream(vdb.getBytes("UTF-8"))));
+
+        ValidationResult report = metadataInstance.getVdb("myservice").validate("create view v as select * from tbl");
+        assertSame(report, metadataInstance.getVdb("myservice").validate("create view v as select * from tbl"));
+        //validation is not the same as parsing
+        assertNotSame(report, metadataInstance.parse("create view v as select * from tbl"));
+
+        //a redeployment may change the result
+        metadataInstance.deploy(VDBMetadataParser.unmarshell(new ByteArrayInputStream(vdb.getBytes("UTF-8"))));
+        assertNotSame(report, metadataInstance.getVdb("myservice").validate("create view v as select * from tbl"));
+    }
+
     @Test
     public void testHasLoaded() throws Exception {
         String vdb = "<vdb name=\"myservice\" version=\"1\">\n" +
@@ -102,6 +134,66 @@ public class DefaultMetadataInstanceTest {
         assertFalse(vdb2.isActive());
     }
 
+    @Test
+    public void testDeploymentRegistry() throws Exception {
+        assertNull(metadataInstance.getVdb("myservice"));
+
+        String vdb = "<vdb name=\"myservice\" version=\"1\">\n" +
+                "    <model visible=\"true\" name=\"accounts\" type=\"VIRTUAL\">\n" +
+                "      <metadata type=\"DDL\">create view tbl (col) as select 1;</metadata>" +
+                "    </model>    \n" +
+                "</vdb>";
+
+        metadataInstance.deploy(VDBMetadataParser.unmarshell(new ByteArrayInputStream(vdb.getBytes("UTF-8"))));
+
+        //the same live wrapper is returned
+        TeiidVdbImpl teiidVdb = metadataInstance.getVdb("myservice");
+        assertSame(teiidVdb, metadataInstance.getVdb("myservice"));
+        assertTrue(metadataInstance.getVdbs().contains(teiidVdb));
+
+        //redeploying replaces the wrapper
+        metadataInstance.deploy(VDBMetadataParser.unmarshell(new ByteArrayInputStream(vdb.getBytes("UTF-8"))));
+        assertNotSame(teiidVdb, metadataInstance.getVdb("myservice"));
+        assertTrue(metadataInstance.getVdb("myservice").isActive());
+
+        metadataInstance.undeployDynamicVdb("myservice");
+
+        assertNull(metadataInstance.getVdb("myservice"));
+        assertFalse(metadataInstance.getVdbs().contains(teiidVdb));
+    }
+
+    @Test
+    public void testDeploymentMetrics() throws Exception {
+        assertEquals(VdbDeploymentMetrics.MASTER, VdbDeploymentMetrics.getKind("Preview"));
+        assertEquals(VdbDeploymentMetrics.CONNECTION, VdbDeploymentMetrics.getKind("sourceconn-load"));
+        assertEquals(VdbDeploymentMetrics.PREVIEW, VdbDeploymentMetrics.getKind("dvvdb"));
+
+        metadataInstance.init();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        metadataInstance.bindTo(registry);
+        double deployed = registry.get("dv.vdbs.deployed").gauge().value();
+
+        String vdb = "<vdb name=\"sourceconn\" version=\"1\">\n" +
+                "    <model visible=\"true\" name=\"accounts\" type=\"VIRTUAL\">\n" +
+                "      <metadata type=\"DDL\">create view tbl (col) as select 1;</metadata>" +
+                "    </model>    \n" +
+                "</vdb>";
+
+        metadataInstance.deploy(VDBMetadataParser.unmarshell(new ByteArrayInputStream(vdb.getBytes("UTF-8"))));
+
+        VdbDeploymentMetrics metrics = metadataInstance.getDeploymentMetrics();
+        assertEquals(1, metrics.getDeployCount(VdbDeploymentMetrics.CONNECTION));
+        assertEquals(0, metrics.getFailureCount(VdbDeploymentMetrics.CONNECTION));
+        assertEquals(1, registry.get("dv.vdb.deploy").tag("kind", "connection").timer().count());
+        assertEquals(1, registry.get("dv.vdb.load").tag("kind", "connection").timer().count());
+        assertEquals(deployed + 1, registry.get("dv.vdbs.deployed").gauge().value(), 0);
+
+        metadataInstance.undeployDynamicVdb("sourceconn");
+
+        assertEquals(1, metrics.getUndeployCount(VdbDeploymentMetrics.CONNECTION));
+        assertEquals(deployed, registry.get("dv.vdbs.deployed").gauge().value(), 0);
+    }
+
     @Test
     public void shouldFindValidationErrors() throws Exception {
         String vdb = "<vdb name=\"myservice\" version=\"1\">\n" +
@@ -120,4 +212,114 @@ public class DefaultMetadataInstanceTest {
         assertTrue(teiidVdb.hasValidationError("views", "tbl2", "table"));
     }
 
+    @Test
+    public void shouldIndexValidationErrorsPerModel() throws Exception {
+        metadataInstance.init();
+
+        String vdb = "<vdb name=\"myservice\" version=\"1\">\n" +
+                "    <property name=\"preview\" value=\"true\"/>" +
+                "    <model visible=\"true\" name=\"views\" type=\"VIRTUAL\">\n" +
+                "      <metadata type=\"DDL\">create view tbl (col) as select 1;</metadata>" +
+                "    </model>    \n" +
+                "    <model visible=\"true\" name=\"other\" type=\"VIRTUAL\">\n" +
+                "      <metadata type=\"DDL\">create view tbl (col string) as select 1;</metadata>" +
+                "    </model>    \n" +
+                "</vdb>";
+
+        metadataInstance.deploy(VDBMetadataParser.unmarshell(new ByteArrayInputStream(vdb.getBytes("UTF-8"))));
+
+        TeiidVdbImpl teiidVdb = metadataInstance.getVdb("myservice");
+
+        //built when the deployment finished
+        assertNotNull(teiidVdb.getVDBMetaData().getAttachment(ValidationErrorIndex.class));
+
+        assertFalse(teiidVdb.hasValidationError("views", "tbl", "table"));
+        assertTrue(teiidVdb.hasValidationError("other", "tbl", "table"));
+        assertFalse(teiidVdb.hasValidationError("missing", "tbl", "table"));
+    }
+
+    @Test
+    public void testConnectionReuse() throws Exception {
+        String vdb = "<vdb name=\"myservice\" version=\"1\">\n" +
+                "    <model visible=\"true\" name=\"accounts\" type=\"VIRTUAL\">\n" +
+                "      <metadata type=\"DDL\">create view tbl (col) as select 1;</metadata>" +
+                "    </model>    \n" +
+                "</vdb>";
+
+        metadataInstance.deploy(VDBMetadataParser.unmarshell(new ByteArrayInputStream(vdb.getBytes("UTF-8"))));
+
+        LocalConnectionPool pool = metadataInstance.getConnectionPool();
+
+        assertEquals(1, metadataInstance.query("myservice", "select * from tbl", MetadataInstance.NO_OFFSET, MetadataInstance.NO_LIMIT).getRows().size());
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(0, pool.getReusedCount());
+        assertEquals(1, pool.getIdleCount());
+
+        assertEquals(1, metadataInstance.query("myservice", "select * from tbl", MetadataInstance.NO_OFFSET, MetadataInstance.NO_LIMIT).getRows().size());
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, pool.getReusedCount());
+
+        //redeploy should evict and the new vdb be queryable
+        metadataInstance.deploy(VDBMetadataParser.unmarshell(new ByteArrayInputStream(vdb.getBytes("UTF-8"))));
+        assertEquals(1, pool.getEvictedCount());
+        assertEquals(0, pool.getIdleCount());
+
+        assertEquals(1, metadataInstance.query("myservice", "select * from tbl", MetadataInstance.NO_OFFSET, MetadataInstance.NO_LIMIT).getRows().size());
+        assertEquals(2, pool.getCreatedCount());
+
+        metadataInstance.undeployDynamicVdb("myservice");
+        assertEquals(2, pool.getEvictedCount());
+    }
+
+    @Test
+    public void testConnectionSessionReset() throws Exception {
+        String vdb = "<vdb name=\"myservice\" version=\"1\">\n" +
+                "    <model visible=\"true\" name=\"accounts\" type=\"VIRTUAL\">\n" +
+                "      <metadata type=\"DDL\">create view tbl (col) as select 1;</metadata>" +
+                "    </model>    \n" +
+                "</vdb>";
+
+        metadataInstance.deploy(VDBMetadataParser.unmarshell(new ByteArrayInputStream(vdb.getBytes("UTF-8"))));
+
+        LocalConnectionPool pool = metadataInstance.getConnectionPool();
+
+        //a set option is not visible to the next borrower
+        try (Connection c = metadataInstance.getConnection("myservice", DefaultMetadataInstance.DEFAULT_VDB_VERSION);
+                Statement s = c.createStatement()) {
+            s.execute("SET NOEXEC ON");
+            try (ResultSet rs = s.executeQuery("select * from tbl")) {
+                assertFalse(rs.next());
+            }
+        }
+        assertEquals(1, pool.getIdleCount());
+
+        assertEquals(1, metadataInstance.query("myservice", "select * from tbl", MetadataInstance.NO_OFFSET, MetadataInstance.NO_LIMIT).getRows().size());
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, pool.getReusedCount());
+
+        //a temp table is not visible to the next borrower
+        try (Connection c = metadataInstance.getConnection("myservice", DefaultMetadataInstance.DEFAULT_VDB_VERSION);
+                Statement s = c.createStatement()) {
+            s.execute("create local temporary table #tmp (x integer)");
+        }
+        assertEquals(0, pool.getIdleCount());
+
+        try (Connection c = metadataInstance.getConnection("myservice", DefaultMetadataInstance.DEFAULT_VDB_VERSION);
+                Statement s = c.createStatement()) {
+            assertEquals(2, pool.getCreatedCount());
+            try {
+                s.executeQuery("select * from #tmp");
+                fail();
+            } catch (SQLException e) {
+                //expected
+            }
+        }
+
+        assertTrue(LocalConnectionPool.isPlainQuery("select * from tbl"));
+        assertTrue(LocalConnectionPool.isPlainQuery(" (SELECT 1) union select 2"));
+        assertFalse(LocalConnectionPool.isPlainQuery("select 1 into #tmp"));
+        assertFalse(LocalConnectionPool.isPlainQuery("insert into tbl values (1)"));
+        assertFalse(LocalConnectionPool.isPlainQuery("exec proc()"));
+    }
+
 }
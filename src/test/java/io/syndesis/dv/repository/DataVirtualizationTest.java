@@ -20,6 +20,8 @@ package io.syndesis.dv.repository;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -76,6 +78,19 @@ public class DataVirtualizationTest {
         assertEquals(2, workspaceManagerImpl.findDataVirtualizationNames().size());
     }
 
+    @Test public void testGetRecentlyModifiedNames() {
+        workspaceManagerImpl.createDataVirtualization("foo");
+        workspaceManagerImpl.createDataVirtualization("bar");
+        workspaceManagerImpl.createSchema("sid", "source", "create foreign table x (y integer)");
+        entityManager.flush();
+
+        entityManager.getEntityManager().createNativeQuery(
+                "update data_virtualization set modified_at = TIMESTAMP '2019-01-01 00:00:00' where name = 'foo'").executeUpdate();
+
+        assertEquals(Arrays.asList("bar", "foo"), workspaceManagerImpl.findRecentlyModifiedDataVirtualizationNames(5));
+        assertEquals(Arrays.asList("bar"), workspaceManagerImpl.findRecentlyModifiedDataVirtualizationNames(1));
+    }
+
     @Test
     public void testGetBySourceId() {
         DataVirtualization dv = workspaceManagerImpl.createDataVirtualization("foo");
@@ -114,4 +114,33 @@ public class ViewDefinitionTest {
         entityManager.flush();
     }
 
+    @Test
+    public void testViewDependencies() throws Exception {
+        workspaceManagerImpl.createDataVirtualization("name");
+        workspaceManagerImpl.createDataVirtualization("name1");
+
+        ViewDefinition x = workspaceManagerImpl.createViewDefiniton("name", "x");
+        ViewDefinition y = workspaceManagerImpl.createViewDefiniton("name1", "y");
+
+        workspaceManagerImpl.updateViewDependencies(x, Arrays.asList("schema=s/table=a", "schema=s/table=b", "invalid"));
+        workspaceManagerImpl.updateViewDependencies(y, Arrays.asList("schema=s/table=b", "schema=t/table=c"));
+
+        assertEquals(2, workspaceManagerImpl.findDataVirtualizationNamesBySchemaNames(Arrays.asList("s", "u")).size());
+        assertEquals(Arrays.asList("name1"), workspaceManagerImpl.findDataVirtualizationNamesBySchemaNames(Arrays.asList("t")));
+        assertTrue(workspaceManagerImpl.findDataVirtualizationNamesBySchemaNames(Arrays.asList()).isEmpty());
+
+        assertEquals(2, workspaceManagerImpl.findViewDefinitionsBySourceTable("s", null).size());
+        assertEquals(2, workspaceManagerImpl.findViewDefinitionsBySourceTable("s", "b").size());
+        assertEquals("x", workspaceManagerImpl.findViewDefinitionsBySourceTable("s", "a").get(0).getName());
+
+        //replaces the existing
+        workspaceManagerImpl.updateViewDependencies(x, Arrays.asList("schema=t/table=c"));
+        assertTrue(workspaceManagerImpl.findViewDefinitionsBySourceTable("s", "a").isEmpty());
+        assertEquals(2, workspaceManagerImpl.findViewDefinitionsBySourceTable("t", "c").size());
+
+        //removed with the view
+        workspaceManagerImpl.deleteViewDefinition(y.getId());
+        assertEquals(Arrays.asList("name"), workspaceManagerImpl.findDataVirtualizationNamesBySchemaNames(Arrays.asList("t")));
+    }
+
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class DebouncedTaskTest {
+
+    private ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testBurstCollapsed() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        DebouncedTask task = new DebouncedTask(executor, runs::incrementAndGet, 200, 10000);
+
+        for (int i = 0; i < 10; i++) {
+            task.request();
+        }
+
+        for (int i = 0; i < 50 && runs.get() == 0; i++) {
+            Thread.sleep(100);
+        }
+        Thread.sleep(400);
+        assertEquals(1, runs.get());
+        assertEquals(10, task.getRequestCount());
+
+        //a later request runs again
+        task.request();
+        for (int i = 0; i < 50 && runs.get() == 1; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void testMaxDelay() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        DebouncedTask task = new DebouncedTask(executor, runs::incrementAndGet, 200, 400);
+
+        //never quiet for the window, but the max delay forces a run
+        long end = System.currentTimeMillis() + 1500;
+        while (System.currentTimeMillis() < end) {
+            task.request();
+            Thread.sleep(20);
+        }
+        assertTrue(runs.get() >= 2);
+    }
+
+}
@@ -21,11 +21,14 @@ package io.syndesis.dv.server.endpoint;
 import static org.junit.Assert.*;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import io.syndesis.dv.metadata.internal.DefaultMetadataInstance;
+import io.syndesis.dv.model.DataVirtualization;
 import io.syndesis.dv.model.ViewDefinition;
 import io.syndesis.dv.repository.RepositoryConfiguration;
 import io.syndesis.dv.repository.RepositoryManagerImpl;
@@ -58,6 +61,9 @@ public class EditorServiceTest {
     @Autowired
     private DataVirtualizationService dvService;
 
+    @Autowired
+    private MetadataService metadataService;
+
     @Autowired
     private TestEntityManager entityManager;
 
@@ -126,6 +132,83 @@ public class EditorServiceTest {
         }
     }
 
+    @Test public void testValidateViewDefinitions() throws Exception {
+        try {
+            utilService.validateViewDefinitions("x");
+            fail();
+        } catch (ResponseStatusException e) {
+            //not found
+        }
+
+        repositoryManager.createDataVirtualization("x");
+        metadataInstance.deploy(dummyPreviewVdb());
+
+        repositoryManager.createViewDefiniton("x", "a").setDdl("create view a as select * from v");
+        repositoryManager.createViewDefiniton("x", "b").setDdl("create view b as select * from missing");
+        repositoryManager.createViewDefiniton("x", "c");
+        entityManager.flush();
+
+        metadataService.updatePreviewVdb("x");
+
+        Map<String, RestViewDefinitionStatus> statuses = new HashMap<>();
+        for (RestViewDefinitionStatus status : utilService.validateViewDefinitions("x")) {
+            statuses.put(status.getViewDefinition().getName(), status);
+        }
+        assertEquals(3, statuses.size());
+        assertEquals("SUCCESS", statuses.get("a").getStatus());
+        assertEquals("ERROR", statuses.get("b").getStatus());
+        //no ddl
+        assertEquals("ERROR", statuses.get("c").getStatus());
+    }
+
+    @Test public void testOverlayValidation() throws Exception {
+        repositoryManager.createDataVirtualization("x");
+        metadataInstance.deploy(dummyPreviewVdb());
+
+        ViewDefinition a = repositoryManager.createViewDefiniton("x", "a");
+        a.setDdl("create view a as select * from v");
+        a.setComplete(true);
+        a.setParsable(true);
+        entityManager.flush();
+
+        //resolves against the view a, which is not deployed
+        ViewDefinition b = new ViewDefinition("x", "b");
+        b.setDdl("create view b as select * from x.a");
+        RestViewDefinitionStatus status = utilService.validateViewDefinition(b);
+        assertEquals(status.getMessage(), "SUCCESS", status.getStatus());
+        assertEquals(Arrays.asList("schema=x/table=a"), b.getSourcePaths());
+
+        b.setDdl("create view b as select * from x.missing");
+        assertEquals("ERROR", utilService.validateViewDefinition(b).getStatus());
+
+        //the virtualization preview vdb was not needed
+        assertNull(metadataInstance.getVdb(DataVirtualization.getPreviewVdbName("x")));
+    }
+
+    @Test public void testOverlayColumns() throws Exception {
+        repositoryManager.createDataVirtualization("x");
+        metadataInstance.deploy(dummyPreviewVdb());
+
+        //c selects from d, which is after it by name, and neither has a column list
+        ViewDefinition c = repositoryManager.createViewDefiniton("x", "c");
+        c.setDdl("create view c as select c1 from x.d");
+        c.setComplete(true);
+        c.setParsable(true);
+        ViewDefinition d = repositoryManager.createViewDefiniton("x", "d");
+        d.setDdl("create view d as select expr1 as c1 from v");
+        d.setComplete(true);
+        d.setParsable(true);
+        entityManager.flush();
+
+        ViewDefinition b = new ViewDefinition("x", "b");
+        b.setDdl("create view b as select c1 from x.c");
+        RestViewDefinitionStatus status = utilService.validateViewDefinition(b);
+        assertEquals(status.getMessage(), "SUCCESS", status.getStatus());
+
+        b.setDdl("create view b as select c2 from x.c");
+        assertEquals("ERROR", utilService.validateViewDefinition(b).getStatus());
+    }
+
     static VDBMetaData dummyPreviewVdb() {
         VDBMetaData vdb = new VDBMetaData();
         vdb.setName(EditorService.PREVIEW_VDB);
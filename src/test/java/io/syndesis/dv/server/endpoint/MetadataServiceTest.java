@@ -19,30 +19,65 @@
 package io.syndesis.dv.server.endpoint;
 
 import static org.junit.Assert.*;
-
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import io.syndesis.dv.datasources.DefaultSyndesisDataSource;
 import io.syndesis.dv.metadata.TeiidVdb;
 import io.syndesis.dv.metadata.internal.DefaultMetadataInstance;
+import io.syndesis.dv.metadata.internal.DefaultMetadataInstance.TeiidVdbImpl;
 import io.syndesis.dv.metadata.internal.TeiidDataSourceImpl;
+import io.syndesis.dv.metadata.query.QSColumnarFormat;
+import io.syndesis.dv.metadata.query.QSLob;
+import io.syndesis.dv.metadata.query.QSResult;
+import io.syndesis.dv.metadata.query.QSStatistics;
+import io.syndesis.dv.model.DataVirtualization;
+import io.syndesis.dv.model.ViewDefinition;
 import io.syndesis.dv.repository.RepositoryConfiguration;
 import io.syndesis.dv.repository.RepositoryManagerImpl;
 import io.syndesis.dv.rest.JsonMarshaller;
 import io.syndesis.dv.server.endpoint.EditorService;
 import io.syndesis.dv.server.endpoint.MetadataService;
+import io.syndesis.dv.server.endpoint.QueryAdmissionController.Kind;
+import io.syndesis.dv.server.endpoint.QueryAdmissionController.Permit;
 import io.syndesis.dv.server.endpoint.QueryAttribute;
 import io.syndesis.dv.server.endpoint.RestSchemaNode;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.teiid.adminapi.impl.VDBMetaData;
+import org.teiid.metadata.Schema;
+import org.teiid.metadata.Table;
+import org.teiid.query.metadata.TransformationMetadata;
 
 import io.syndesis.dv.KException;
 
@@ -61,6 +96,15 @@ public class MetadataServiceTest {
     @Autowired
     private DefaultMetadataInstance metadataInstance;
 
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private VirtualizationVersionCache virtualizationVersionCache;
+
+    @Autowired
+    private QueryAdmissionController queryAdmissionController;
+
     @Test
     public void testSourceVdbGeneration() throws Exception {
 //        Map<String, String> properties = new LinkedHashMap<String, String>();
@@ -213,4 +257,551 @@ public class MetadataServiceTest {
 
         metadataInstance.query(vdb.getName(), "select * from v", DefaultMetadataInstance.NO_OFFSET, DefaultMetadataInstance.NO_LIMIT);
     }
+
+    @Test
+    public void testIncrementalPreviewUpdate() throws Exception {
+        DataVirtualization dv = repositoryManagerImpl.createDataVirtualization("dv1");
+
+        metadataInstance.deploy(EditorServiceTest.dummyPreviewVdb());
+
+        ViewDefinition vd = repositoryManagerImpl.createViewDefiniton("dv1", "myview");
+        vd.setDdl("create view myview (col integer) as select 1");
+        vd.setComplete(true);
+        vd.setParsable(true);
+        entityManager.flush();
+
+        TeiidVdb vdb = metadataService.updatePreviewVdb("dv1");
+        VDBMetaData deployed = ((TeiidVdbImpl)vdb).getVDBMetaData();
+        assertEquals(1, metadataInstance.query(vdb.getName(), "select * from myview",
+                DefaultMetadataInstance.NO_OFFSET, DefaultMetadataInstance.NO_LIMIT).getRows().get(0).getRow().get(0));
+
+        //only the transformation changes, so the vdb is updated in place
+        vd.setDdl("create view myview (col integer) as select 2");
+        dv.setModifiedAt(null);
+        entityManager.flush();
+        virtualizationVersionCache.invalidate("dv1");
+
+        vdb = metadataService.updatePreviewVdb("dv1");
+        assertSame(deployed, ((TeiidVdbImpl)vdb).getVDBMetaData());
+        assertEquals(dv.getVersion().toString(), vdb.getPropertyValue("version"));
+        assertEquals(2, metadataInstance.query(vdb.getName(), "select * from myview",
+                DefaultMetadataInstance.NO_OFFSET, DefaultMetadataInstance.NO_LIMIT).getRows().get(0).getRow().get(0));
+
+        //a column change requires a full deployment
+        vd.setDdl("create view myview (col2 integer) as select 3");
+        dv.setModifiedAt(null);
+        entityManager.flush();
+        virtualizationVersionCache.invalidate("dv1");
+
+        vdb = metadataService.updatePreviewVdb("dv1");
+        assertNotSame(deployed, ((TeiidVdbImpl)vdb).getVDBMetaData());
+        assertEquals(3, metadataInstance.query(vdb.getName(), "select col2 from myview",
+                DefaultMetadataInstance.NO_OFFSET, DefaultMetadataInstance.NO_LIMIT).getRows().get(0).getRow().get(0));
+    }
+
+    @Test
+    public void testPreviewVdbStatus() throws Exception {
+        DataVirtualization dv = repositoryManagerImpl.createDataVirtualization("dv1");
+
+        metadataInstance.deploy(EditorServiceTest.dummyPreviewVdb());
+
+        RestPreviewVdbStatus status = metadataService.getPreviewVdbStatus("dv1");
+        assertEquals(RestPreviewVdbStatus.State.NOT_DEPLOYED, status.getState());
+        assertNull(status.getModels());
+
+        TeiidVdb vdb = metadataService.updatePreviewVdb("dv1");
+
+        status = metadataService.getPreviewVdbStatus("dv1");
+        assertEquals(RestPreviewVdbStatus.State.LOADED, status.getState());
+        assertEquals(dv.getVersion().toString(), status.getVersion());
+        assertEquals("LOADED", status.getModels().get("dv1"));
+        assertNull(status.getElapsedMillis());
+
+        //current and loaded, so no deployment is needed
+        assertSame(((TeiidVdbImpl)vdb).getVDBMetaData(),
+                ((TeiidVdbImpl)metadataService.getLoadedPreviewVdb("dv1")).getVDBMetaData());
+    }
+
+    /**
+     * Holds deployment tasks until they are run on the calling thread,
+     * which is needed to see the test transaction
+     */
+    private static class ManualExecutor extends ThreadPoolExecutor {
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        ManualExecutor() {
+            super(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        }
+
+        @Override
+        public synchronized void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            List<Runnable> toRun = null;
+            synchronized (this) {
+                toRun = new ArrayList<>(tasks);
+                tasks.clear();
+            }
+            toRun.forEach(Runnable::run);
+        }
+    }
+
+    @Test
+    public void testPreviewVdbDeploying() throws Exception {
+        repositoryManagerImpl.createDataVirtualization("dv1");
+
+        metadataInstance.deploy(EditorServiceTest.dummyPreviewVdb());
+
+        ManualExecutor executor = new ManualExecutor();
+        Object previewDeployExecutor = ReflectionTestUtils.getField(metadataService, "previewDeployExecutor");
+        ReflectionTestUtils.setField(metadataService, "previewDeployExecutor", executor);
+        ReflectionTestUtils.setField(metadataService, "deployWaitMillis", 10L);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        try {
+            //the deployment is still running
+            PreviewVdbLoadingException loading = null;
+            try {
+                metadataService.getLoadedPreviewVdb("dv1");
+                fail();
+            } catch (PreviewVdbLoadingException e) {
+                loading = e;
+            }
+            assertEquals(RestPreviewVdbStatus.State.DEPLOYING, loading.getStatus().getState());
+            assertNotNull(loading.getStatus().getElapsedMillis());
+            assertEquals(RestPreviewVdbStatus.State.DEPLOYING, metadataService.getPreviewVdbStatus("dv1").getState());
+
+            ResponseEntity<RestPreviewVdbStatus> response = new PreviewVdbExceptionHandler().handlePreviewVdbLoading(loading);
+            assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+            assertSame(loading.getStatus(), response.getBody());
+            assertTrue(response.getHeaders().getLocation().getPath().endsWith(
+                    "/v1/metadata/previewStatus/dv1"));
+
+            //the same deployment is waited on
+            try {
+                metadataService.getLoadedPreviewVdb("dv1");
+                fail();
+            } catch (PreviewVdbLoadingException e) {
+                //expected
+            }
+            assertEquals(1, executor.tasks.size());
+
+            executor.runAll();
+            TeiidVdb vdb = metadataService.getLoadedPreviewVdb("dv1");
+            assertTrue(vdb.hasLoaded());
+            assertEquals(RestPreviewVdbStatus.State.LOADED, metadataService.getPreviewVdbStatus("dv1").getState());
+
+            //a failed deployment is reported, then retried by the next request
+            try {
+                metadataService.getLoadedPreviewVdb("dv2");
+                fail();
+            } catch (PreviewVdbLoadingException e) {
+                assertEquals(RestPreviewVdbStatus.State.DEPLOYING, e.getStatus().getState());
+            }
+            executor.runAll();
+
+            RestPreviewVdbStatus status = metadataService.getPreviewVdbStatus("dv2");
+            assertEquals(RestPreviewVdbStatus.State.FAILED, status.getState());
+            assertEquals(1, status.getErrors().size());
+
+            repositoryManagerImpl.createDataVirtualization("dv2");
+            try {
+                metadataService.getLoadedPreviewVdb("dv2");
+                fail();
+            } catch (PreviewVdbLoadingException e) {
+                assertEquals(RestPreviewVdbStatus.State.DEPLOYING, e.getStatus().getState());
+            }
+            executor.runAll();
+
+            vdb = metadataService.getLoadedPreviewVdb("dv2");
+            assertTrue(vdb.hasLoaded());
+            status = metadataService.getPreviewVdbStatus("dv2");
+            assertEquals(RestPreviewVdbStatus.State.LOADED, status.getState());
+            assertNull(status.getErrors());
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+            ReflectionTestUtils.setField(metadataService, "deployWaitMillis", 5000L);
+            ReflectionTestUtils.setField(metadataService, "previewDeployExecutor", previewDeployExecutor);
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPreviewVersionCache() throws Exception {
+        DataVirtualization dv = repositoryManagerImpl.createDataVirtualization("dv1");
+
+        metadataInstance.deploy(EditorServiceTest.dummyPreviewVdb());
+
+        TeiidVdb vdb = metadataService.updatePreviewVdb("dv1");
+        assertEquals(dv.getVersion(), virtualizationVersionCache.get("dv1"));
+
+        //not a local write through the services, so the cached version is used
+        dv.setModifiedAt(null);
+        entityManager.flush();
+        assertSame(((TeiidVdbImpl)vdb).getVDBMetaData(),
+                ((TeiidVdbImpl)metadataService.updatePreviewVdb("dv1")).getVDBMetaData());
+
+        virtualizationVersionCache.invalidate("dv1");
+        vdb = metadataService.updatePreviewVdb("dv1");
+        assertEquals(dv.getVersion().toString(), vdb.getPropertyValue("version"));
+
+        //a stale read is not cached
+        long stamp = virtualizationVersionCache.getStamp();
+        virtualizationVersionCache.invalidate("dv1");
+        virtualizationVersionCache.put("dv1", 0L, stamp);
+        assertNull(virtualizationVersionCache.get("dv1"));
+    }
+
+    @Test
+    public void testPreviewVdbMasterGeneration() throws Exception {
+        repositoryManagerImpl.createDataVirtualization("dv1");
+
+        metadataInstance.deploy(EditorServiceTest.dummyPreviewVdb());
+
+        TeiidVdb vdb = metadataService.updatePreviewVdb("dv1");
+        VDBMetaData deployed = ((TeiidVdbImpl)vdb).getVDBMetaData();
+        assertSame(deployed, ((TeiidVdbImpl)metadataService.updatePreviewVdb("dv1")).getVDBMetaData());
+
+        //built against an earlier master preview vdb, so it is redeployed
+        metadataInstance.setVdbProperty(vdb.getName(), "master-generation", "-1");
+        assertNotSame(deployed, ((TeiidVdbImpl)metadataService.updatePreviewVdb("dv1")).getVDBMetaData());
+    }
+
+    @Test
+    public void testReferencesMissingSource() throws Exception {
+        Schema schema = metadataInstance.parse("create view v as select * from src.t").getSchema();
+        TeiidVdb vdb = mock(TeiidVdb.class);
+        when(vdb.getSchema("dv1")).thenReturn(schema);
+
+        Set<String> sourceNames = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        sourceNames.add("other");
+        //not a known source
+        assertFalse(MetadataService.referencesMissingSource(vdb, "dv1", sourceNames));
+
+        sourceNames.add("SRC");
+        assertTrue(MetadataService.referencesMissingSource(vdb, "dv1", sourceNames));
+
+        //already imported
+        when(vdb.getSchema("src")).thenReturn(mock(Schema.class));
+        assertFalse(MetadataService.referencesMissingSource(vdb, "dv1", sourceNames));
+    }
+
+    @Test
+    public void testIncrementalPreviewUpdateValidation() throws Exception {
+        metadataInstance.deploy(EditorServiceTest.dummyPreviewVdb());
+
+        //a missing column, then a missing table
+        String[] invalid = {"create view myview (col integer) as select nope",
+                "create view myview (col integer) as select col from nope"};
+        for (int i = 0; i < invalid.length; i++) {
+            String dvName = "dv" + i;
+            DataVirtualization dv = repositoryManagerImpl.createDataVirtualization(dvName);
+
+            ViewDefinition vd = repositoryManagerImpl.createViewDefiniton(dvName, "myview");
+            vd.setDdl("create view myview (col integer) as select 1");
+            vd.setComplete(true);
+            vd.setParsable(true);
+            entityManager.flush();
+
+            TeiidVdb vdb = metadataService.updatePreviewVdb(dvName);
+            VDBMetaData deployed = ((TeiidVdbImpl)vdb).getVDBMetaData();
+
+            //only the transformation changes, but it does not resolve
+            vd.setDdl(invalid[i]);
+            dv.setModifiedAt(null);
+            entityManager.flush();
+
+            vdb = metadataService.updatePreviewVdb(dvName);
+            assertNotSame(deployed, ((TeiidVdbImpl)vdb).getVDBMetaData());
+            //the prior deployment was not modified
+            Table view = deployed.getAttachment(TransformationMetadata.class).getMetadataStore()
+                    .getSchema(dvName).getTable("myview");
+            assertTrue("select 1".equalsIgnoreCase(view.getSelectTransformation()));
+        }
+    }
+
+    @Test
+    public void testStreamingPreviewQuery() throws Exception {
+        QueryAttribute kqa = new QueryAttribute();
+        kqa.setQuery("select * from v");
+        kqa.setTarget("dv1");
+
+        repositoryManagerImpl.createDataVirtualization("dv1");
+
+        metadataInstance.deploy(EditorServiceTest.dummyPreviewVdb());
+
+        ResponseEntity<StreamingResponseBody> response = metadataService.streamQuery(kqa);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        response.getBody().writeTo(baos);
+
+        String[] lines = new String(baos.toByteArray(), "UTF-8").split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"columns\":[{\"type\":\"integer\""));
+        assertEquals("{\"row\":[1]}", lines[1]);
+
+        kqa.setQuery("select * from not_there");
+        try {
+            metadataService.streamQuery(kqa);
+            fail();
+        } catch (ResponseStatusException e) {
+            //should fail before streaming
+            assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+        }
+    }
+
+    @Test
+    public void testCursorPreviewQuery() throws Exception {
+        QueryAttribute kqa = new QueryAttribute();
+        kqa.setQuery("select 1 union all select 2 union all select 3");
+        kqa.setTarget("dv1");
+        kqa.setCursor(true);
+        kqa.setLimit(2);
+
+        repositoryManagerImpl.createDataVirtualization("dv1");
+
+        metadataInstance.deploy(EditorServiceTest.dummyPreviewVdb());
+
+        QSResult result = metadataService.query(kqa);
+        assertEquals(2, result.getRows().size());
+        assertNotNull(result.getCursorId());
+        //the open cursor does not hold its admission between pages
+        assertEquals(0, queryAdmissionController.getActive(Kind.VIRTUALIZATION));
+
+        QSResult next = metadataService.fetchQueryCursor(result.getCursorId(), 2);
+        assertEquals(1, next.getColumns().size());
+        assertEquals(1, next.getRows().size());
+        //exhausted, so it's been closed
+        assertNull(next.getCursorId());
+        assertEquals(0, queryAdmissionController.getActive(Kind.VIRTUALIZATION));
+
+        try {
+            metadataService.fetchQueryCursor(result.getCursorId(), 2);
+            fail();
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.NOT_FOUND, e.getStatus());
+        }
+
+        //explicit close
+        result = metadataService.query(kqa);
+        assertNotNull(result.getCursorId());
+        metadataService.closeQueryCursor(result.getCursorId());
+        assertEquals(0, queryAdmissionController.getActive(Kind.VIRTUALIZATION));
+        try {
+            metadataService.closeQueryCursor(result.getCursorId());
+            fail();
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.NOT_FOUND, e.getStatus());
+        }
+    }
+
+    @Test
+    public void testIdleCursorDoesNotBlockQueries() throws Exception {
+        QueryAttribute kqa = new QueryAttribute();
+        kqa.setQuery("select 1 union all select 2");
+        kqa.setTarget("dv1");
+        kqa.setCursor(true);
+        kqa.setLimit(1);
+
+        repositoryManagerImpl.createDataVirtualization("dv1");
+
+        metadataInstance.deploy(EditorServiceTest.dummyPreviewVdb());
+
+        //leave a single permit for the virtualization
+        List<Permit> held = new ArrayList<>();
+        ReflectionTestUtils.setField(queryAdmissionController, "timeoutMillis", 100L);
+        try {
+            for (int i = 0; i < 3; i++) {
+                held.add(queryAdmissionController.acquire("dv1", Collections.emptyList()));
+            }
+
+            QSResult result = metadataService.query(kqa);
+            assertNotNull(result.getCursorId());
+
+            //the idle cursor does not prevent another query
+            QueryAttribute other = new QueryAttribute();
+            other.setQuery("select * from v");
+            other.setTarget("dv1");
+            assertEquals(1, metadataService.query(other).getRows().size());
+
+            QSResult next = metadataService.fetchQueryCursor(result.getCursorId(), 1);
+            assertEquals(1, next.getRows().size());
+            assertNull(next.getCursorId());
+        } finally {
+            for (Permit permit : held) {
+                permit.close();
+            }
+            ReflectionTestUtils.setField(queryAdmissionController, "timeoutMillis", 30000L);
+        }
+    }
+
+    @Test
+    public void testCachedPreviewQuery() throws Exception {
+        QueryAttribute kqa = new QueryAttribute();
+        kqa.setQuery("select * from v");
+        kqa.setTarget("dv1");
+        kqa.setCache(true);
+
+        repositoryManagerImpl.createDataVirtualization("dv1");
+
+        metadataInstance.deploy(EditorServiceTest.dummyPreviewVdb());
+
+        QSResult result = metadataService.query(kqa);
+        assertEquals(1, result.getRows().size());
+
+        //insignificant differences should still hit
+        kqa.setQuery("SELECT *  FROM v");
+        assertSame(result, metadataService.query(kqa));
+
+        //a redeploy should invalidate
+        metadataInstance.undeployDynamicVdb(DataVirtualization.getPreviewVdbName("dv1"));
+        QSResult other = metadataService.query(kqa);
+        assertNotSame(result, other);
+        assertEquals(1, other.getRows().size());
+    }
+
+    @Test
+    public void testStatisticsPreviewQuery() throws Exception {
+        QueryAttribute kqa = new QueryAttribute();
+        kqa.setQuery("select * from v");
+        kqa.setTarget("dv1");
+        kqa.setStatistics(true);
+
+        repositoryManagerImpl.createDataVirtualization("dv1");
+
+        metadataInstance.deploy(EditorServiceTest.dummyPreviewVdb());
+
+        QSResult result = metadataService.query(kqa);
+        assertEquals(1, result.getRows().size());
+        QSStatistics statistics = result.getStatistics();
+        assertNotNull(statistics);
+        assertEquals(1, statistics.getRowCount());
+        assertTrue(statistics.getBytes() > 0);
+        assertTrue(statistics.getFetchTime() >= statistics.getFirstRowTime());
+        assertNotNull(statistics.getPlan());
+        //no source access
+        assertEquals(0, statistics.getPushdownQueries().size());
+
+        kqa.setStatistics(false);
+        assertNull(metadataService.query(kqa).getStatistics());
+    }
+
+    @Test
+    public void testLobPreviewQuery() throws Exception {
+        QueryAttribute kqa = new QueryAttribute();
+        kqa.setQuery("select cast('hello' as clob), cast(to_bytes('ab', 'UTF-8') as blob) from v");
+        kqa.setTarget("dv1");
+        kqa.setCache(true);
+
+        repositoryManagerImpl.createDataVirtualization("dv1");
+
+        metadataInstance.deploy(EditorServiceTest.dummyPreviewVdb());
+
+        //spooling is opt-in
+        QSResult result = metadataService.query(kqa);
+        assertEquals(QSLob.CLOB, result.getRows().get(0).getRow().get(0));
+        assertEquals(QSLob.BLOB, result.getRows().get(0).getRow().get(1));
+
+        kqa.setLobs(true);
+        result = metadataService.query(kqa);
+        assertEquals(1, result.getRows().size());
+        QSLob clob = (QSLob)result.getRows().get(0).getRow().get(0);
+        assertEquals(QSLob.CLOB, clob.getType());
+        assertEquals(5, clob.getLength());
+        QSLob blob = (QSLob)result.getRows().get(0).getRow().get(1);
+        assertEquals(QSLob.BLOB, blob.getType());
+
+        ResponseEntity<Resource> response = metadataService.getQueryLob(clob.getLobId());
+        assertTrue(MediaType.TEXT_PLAIN.isCompatibleWith(response.getHeaders().getContentType()));
+        try (InputStream is = response.getBody().getInputStream()) {
+            assertEquals("hello", new String(StreamUtils.copyToByteArray(is), StandardCharsets.UTF_8));
+        }
+
+        //results with lob references are not cached
+        assertNotSame(result, metadataService.query(kqa));
+
+        try {
+            metadataService.getQueryLob("x");
+            fail();
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.NOT_FOUND, e.getStatus());
+        }
+    }
+
+    @Test
+    public void testQueryJob() throws Exception {
+        QueryAttribute kqa = new QueryAttribute();
+        kqa.setQuery("select * from v");
+        kqa.setTarget("dv1");
+
+        repositoryManagerImpl.createDataVirtualization("dv1");
+
+        metadataInstance.deploy(EditorServiceTest.dummyPreviewVdb());
+
+        ResponseEntity<RestQueryJob> response = metadataService.submitQueryJob(kqa);
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        String id = response.getBody().getId();
+        assertNotNull(id);
+
+        RestQueryJob job = null;
+        for (int i = 0; i < 100; i++) {
+            job = metadataService.getQueryJob(id);
+            if (job.getState().isDone()) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+        assertEquals(RestQueryJob.JobState.COMPLETED, job.getState());
+        assertEquals(1, job.getResult().getRows().size());
+
+        //removes the job
+        metadataService.cancelQueryJob(id);
+        try {
+            metadataService.getQueryJob(id);
+            fail();
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.NOT_FOUND, e.getStatus());
+        }
+
+        kqa.setQuery("select * from not_there");
+        id = metadataService.submitQueryJob(kqa).getBody().getId();
+        for (int i = 0; i < 100; i++) {
+            job = metadataService.getQueryJob(id);
+            if (job.getState().isDone()) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+        assertEquals(RestQueryJob.JobState.FAILED, job.getState());
+        assertNotNull(job.getError());
+    }
+
+    @Test
+    public void testColumnarPreviewQuery() throws Exception {
+        QueryAttribute kqa = new QueryAttribute();
+        kqa.setQuery("select 1 as i, 'x' as s, cast(null as long) as l, cast(1.5 as double) as d "
+                + "union all select 2, null, 3, 2.5");
+        kqa.setTarget("dv1");
+
+        repositoryManagerImpl.createDataVirtualization("dv1");
+
+        metadataInstance.deploy(EditorServiceTest.dummyPreviewVdb());
+
+        ResponseEntity<StreamingResponseBody> response = metadataService.columnarQuery(kqa);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        response.getBody().writeTo(baos);
+
+        QSResult result = QSColumnarFormat.read(new ByteArrayInputStream(baos.toByteArray()));
+        assertEquals(4, result.getColumns().size());
+        assertEquals("integer", result.getColumns().get(0).getType());
+        assertEquals("s", result.getColumns().get(1).getName());
+        assertEquals(2, result.getRows().size());
+
+        QSResult expected = metadataService.query(kqa);
+        for (int i = 0; i < expected.getRows().size(); i++) {
+            assertEquals(expected.getRows().get(i).getRow(), result.getRows().get(i).getRow());
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@SuppressWarnings("nls")
+public class PreviewVdbTrackerTest {
+
+    @Test
+    public void testBudget() {
+        PreviewVdbTracker tracker = new PreviewVdbTracker();
+        ReflectionTestUtils.setField(tracker, "maxVdbs", 2);
+
+        assertEquals(Collections.emptyList(), tracker.touch("a"));
+        assertEquals(Collections.emptyList(), tracker.touch("b"));
+        //a is now the most recent
+        assertEquals(Collections.emptyList(), tracker.touch("a"));
+        assertEquals(Arrays.asList("b"), tracker.touch("c"));
+
+        assertEquals(2, tracker.getTrackedCount());
+        assertFalse(tracker.isTracked("b"));
+        assertEquals(1, tracker.getBudgetEvictions());
+    }
+
+    @Test
+    public void testIdle() throws Exception {
+        PreviewVdbTracker tracker = new PreviewVdbTracker();
+        ReflectionTestUtils.setField(tracker, "idleSeconds", 1L);
+
+        tracker.touch("a");
+        assertEquals(Collections.emptyList(), tracker.removeIdle());
+
+        Thread.sleep(1100);
+        tracker.touch("b");
+        assertEquals(Arrays.asList("a"), tracker.removeIdle());
+        assertTrue(tracker.isTracked("b"));
+        assertEquals(1, tracker.getIdleEvictions());
+    }
+
+}
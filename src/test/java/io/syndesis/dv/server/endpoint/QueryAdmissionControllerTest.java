@@ -0,0 +1,88 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.syndesis.dv.server.endpoint.QueryAdmissionController.Kind;
+import io.syndesis.dv.server.endpoint.QueryAdmissionController.Permit;
+
+@SuppressWarnings("nls")
+public class QueryAdmissionControllerTest {
+
+    @Test
+    public void testAdmission() throws Exception {
+        QueryAdmissionController controller = new QueryAdmissionController();
+        ReflectionTestUtils.setField(controller, "maxPerVirtualization", 2);
+        ReflectionTestUtils.setField(controller, "maxPerSource", 1);
+        ReflectionTestUtils.setField(controller, "maxQueued", 0);
+        ReflectionTestUtils.setField(controller, "timeoutMillis", 100L);
+
+        Permit p1 = controller.acquire("dv1", Arrays.asList("source1"));
+        assertEquals(1, controller.getActive(Kind.VIRTUALIZATION));
+        assertEquals(1, controller.getActive(Kind.SOURCE));
+
+        //the source is at its limit, and nothing may be queued
+        try {
+            controller.acquire("dv2", Arrays.asList("source1"));
+            fail();
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatus());
+        }
+        //the failed attempt should not hold anything
+        assertEquals(1, controller.getActive(Kind.VIRTUALIZATION));
+
+        Permit p2 = controller.acquire("dv1", Collections.emptyList());
+        try {
+            controller.acquire("dv1", Collections.emptyList());
+            fail();
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatus());
+        }
+
+        p1.close();
+        //closing again has no effect
+        p1.close();
+        p2.close();
+        assertEquals(0, controller.getActive(Kind.VIRTUALIZATION));
+        assertEquals(0, controller.getActive(Kind.SOURCE));
+
+        //now with a queue the wait should time out
+        ReflectionTestUtils.setField(controller, "maxQueued", 1);
+        try (Permit p = controller.acquire("dv3", Arrays.asList("source1"))) {
+            long start = System.currentTimeMillis();
+            try {
+                controller.acquire("dv4", Arrays.asList("source1"));
+                fail();
+            } catch (ResponseStatusException e) {
+                assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatus());
+            }
+            assertTrue(System.currentTimeMillis() - start >= 90);
+            assertEquals(0, controller.getWaiting(Kind.SOURCE));
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.syndesis.dv.metadata.query.QSResult;
+
+@SuppressWarnings("nls")
+public class QueryCoalescerTest {
+
+    @Test
+    public void testCoalesce() throws Exception {
+        QueryCoalescer coalescer = new QueryCoalescer();
+        QueryKey key = new QueryKey("vdb", "1", "select 1", 0, -1);
+        QSResult expected = new QSResult();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<QSResult> first = executor.submit(() -> coalescer.execute(key, () -> {
+                executions.incrementAndGet();
+                started.countDown();
+                release.await();
+                return expected;
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            //differs only by whitespace
+            Future<QSResult> second = executor.submit(() -> coalescer.execute(
+                    new QueryKey("vdb", "1", "select  1", 0, -1), () -> {
+                executions.incrementAndGet();
+                return new QSResult();
+            }));
+
+            for (int i = 0; i < 50 && coalescer.getCoalescedCount() == 0; i++) {
+                Thread.sleep(100);
+            }
+            release.countDown();
+
+            assertSame(expected, first.get(5, TimeUnit.SECONDS));
+            assertSame(expected, second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, executions.get());
+            assertEquals(1, coalescer.getCoalescedCount());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //nothing is retained
+        QSResult other = new QSResult();
+        assertSame(other, coalescer.execute(key, () -> other));
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.syndesis.dv.server.endpoint;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.syndesis.dv.metadata.query.QSColumn;
+import io.syndesis.dv.metadata.query.QSCursor;
+import io.syndesis.dv.metadata.query.QSResult;
+import io.syndesis.dv.metadata.query.QSRow;
+import io.syndesis.dv.server.endpoint.QueryAdmissionController.Kind;
+import io.syndesis.dv.server.endpoint.QueryAdmissionController.Permit;
+
+@SuppressWarnings("nls")
+public class QueryCursorRegistryTest {
+
+    private static class TestCursor implements QSCursor {
+        private final Iterator<Integer> values;
+        private boolean closed;
+
+        TestCursor(Integer... values) {
+            this.values = Arrays.asList(values).iterator();
+        }
+
+        @Override
+        public List<QSColumn> getColumns() {
+            return Collections.singletonList(new QSColumn("integer", "x", "x"));
+        }
+
+        @Override
+        public QSRow next() {
+            if (!values.hasNext()) {
+                return null;
+            }
+            QSRow row = new QSRow();
+            row.add(values.next());
+            return row;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private QueryCursorRegistry registry;
+    private QueryAdmissionController controller = new QueryAdmissionController();
+    private QueryCursorRegistry.Admission admission = () -> controller.acquire("dv", Collections.emptyList());
+
+    @Before
+    public void init() {
+        registry = new QueryCursorRegistry();
+        ReflectionTestUtils.setField(registry, "maxCursors", 1);
+        ReflectionTestUtils.setField(registry, "connectionExecutor", mock(ScheduledThreadPoolExecutor.class));
+        registry.init();
+    }
+
+    @Test
+    public void testMaxCursorsReservedBeforeExecution() throws Exception {
+        TestCursor cursor = new TestCursor(1, 2);
+        QSResult result = registry.open(() -> cursor, admission, 1);
+        assertNotNull(result.getCursorId());
+        assertEquals(1, registry.getOpenCursorCount());
+
+        //the query must not be executed when there is no slot
+        AtomicInteger executed = new AtomicInteger();
+        try {
+            registry.open(() -> {
+                executed.incrementAndGet();
+                return new TestCursor(1);
+            }, admission, 1);
+            fail();
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatus());
+        }
+        assertEquals(0, executed.get());
+
+        //reading to the end frees the slot
+        result = registry.fetch(result.getCursorId(), 1);
+        assertNull(result.getCursorId());
+        assertTrue(cursor.closed);
+
+        result = registry.open(() -> new TestCursor(1, 2), admission, 1);
+        assertTrue(registry.close(result.getCursorId()));
+        assertFalse(registry.close(result.getCursorId()));
+
+        //a failed execution does not hold a slot
+        try {
+            registry.open(() -> {
+                throw new IllegalStateException();
+            }, admission, 1);
+            fail();
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        assertNull(registry.open(() -> new TestCursor(1), admission, 1).getCursorId());
+        assertEquals(0, registry.getOpenCursorCount());
+    }
+
+    @Test
+    public void testAdmissionHeldPerPage() throws Exception {
+        ReflectionTestUtils.setField(controller, "maxPerVirtualization", 1);
+        ReflectionTestUtils.setField(controller, "timeoutMillis", 100L);
+
+        QSResult result = registry.open(() -> {
+            assertEquals(1, controller.getActive(Kind.VIRTUALIZATION));
+            return new TestCursor(1, 2, 3);
+        }, admission, 1);
+        assertNotNull(result.getCursorId());
+        //not held between pages
+        assertEquals(0, controller.getActive(Kind.VIRTUALIZATION));
+
+        //a page is not read without admission, but the cursor remains open
+        Permit permit = controller.acquire("dv", Collections.emptyList());
+        try {
+            registry.fetch(result.getCursorId(), 1);
+            fail();
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatus());
+        }
+        permit.close();
+        assertEquals(1, registry.getOpenCursorCount());
+
+        result = registry.fetch(result.getCursorId(), 1);
+        assertEquals(2, result.getRows().get(0).getRow().get(0));
+        assertEquals(0, controller.getActive(Kind.VIRTUALIZATION));
+
+        assertTrue(registry.close(result.getCursorId()));
+
+        //rejected admission does not execute or hold a slot
+        permit = controller.acquire("dv", Collections.emptyList());
+        try {
+            registry.open(() -> {
+                fail();
+                return null;
+            }, admission, 1);
+            fail();
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatus());
+        }
+        permit.close();
+        assertNull(registry.open(() -> new TestCursor(1), admission, 1).getCursorId());
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.syndesis.dv.metadata.MetadataInstance;
+import io.syndesis.dv.metadata.query.QSColumn;
+import io.syndesis.dv.metadata.query.QSCursor;
+import io.syndesis.dv.metadata.query.QSOptions;
+import io.syndesis.dv.metadata.query.QSRow;
+import io.syndesis.dv.server.endpoint.RestQueryJob.JobState;
+
+@SuppressWarnings("nls")
+public class QueryJobManagerTest {
+
+    private QueryJobManager manager = new QueryJobManager();
+    private MetadataInstance metadataInstance = mock(MetadataInstance.class);
+
+    @Before
+    public void setup() throws Exception {
+        when(metadataInstance.openCursor(anyString(), anyString(), anyInt(), anyInt(), any(QSOptions.class))).thenAnswer(invocation -> {
+            QSCursor cursor = mock(QSCursor.class);
+            when(cursor.getColumns()).thenReturn(Arrays.asList(new QSColumn("string", "x", "x")));
+            QSRow row = new QSRow();
+            row.add("some value");
+            when(cursor.next()).thenReturn(row, (QSRow)null);
+            return cursor;
+        });
+        ReflectionTestUtils.setField(manager, "metadataInstance", metadataInstance);
+        ReflectionTestUtils.setField(manager, "queryAdmissionController", new QueryAdmissionController());
+        ReflectionTestUtils.setField(manager, "threads", 1);
+        manager.init();
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testRetainedJobsAreBounded() throws Exception {
+        ReflectionTestUtils.setField(manager, "maxRetained", 2);
+
+        String first = manager.submit("dv", Collections.emptyList(), "vdb", "select 1", 0, -1, false).getId();
+        waitForCompletion(first);
+        for (int i = 0; i < 3; i++) {
+            Thread.sleep(5);
+            String id = manager.submit("dv", Collections.emptyList(), "vdb", "select 1", 0, -1, false).getId();
+            waitForCompletion(id);
+        }
+        //the oldest is removed first
+        assertEquals(2, manager.getJobCount());
+        try {
+            manager.get(first);
+            fail();
+        } catch (RuntimeException e) {
+            //not found
+        }
+    }
+
+    @Test
+    public void testResultSizeLimit() throws Exception {
+        ReflectionTestUtils.setField(manager, "maxBytes", 10L);
+
+        String id = manager.submit("dv", Collections.emptyList(), "vdb", "select 1", 0, -1, false).getId();
+        RestQueryJob job = waitForCompletion(id);
+        assertEquals(JobState.FAILED, job.getState());
+        assertNotNull(job.getError());
+    }
+
+    @Test
+    public void testCancelledJobDoesNotRun() throws Exception {
+        RestQueryJob job = manager.submit("dv", Collections.emptyList(), "vdb", "select 1", 0, -1, false);
+        RestQueryJob cancelled = manager.cancel(job.getId());
+        assertEquals(JobState.CANCELLED, cancelled.getState());
+    }
+
+    private RestQueryJob waitForCompletion(String id) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < end) {
+            RestQueryJob job = manager.get(id);
+            if (job.getState().isDone()) {
+                return job;
+            }
+            Thread.sleep(10);
+        }
+        fail("job did not complete");
+        return null;
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.syndesis.dv.server.endpoint;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.syndesis.dv.metadata.query.QSLob;
+
+@SuppressWarnings("nls")
+public class QueryLobStoreTest {
+
+    private QueryLobStore store = new QueryLobStore();
+
+    @Before
+    public void setup() throws Exception {
+        ReflectionTestUtils.setField(store, "connectionExecutor", mock(ScheduledThreadPoolExecutor.class));
+        ReflectionTestUtils.setField(store, "maxLobBytes", 4L);
+        ReflectionTestUtils.setField(store, "diskBudget", 6L);
+        store.init();
+    }
+
+    @After
+    public void tearDown() {
+        store.shutdown();
+    }
+
+    @Test
+    public void testTruncation() throws Exception {
+        QSLob lob = store.store(new SerialBlob(new byte[] {1, 2, 3}));
+        assertEquals(3, lob.getLength());
+        assertFalse(lob.isTruncated());
+
+        store.remove(lob.getLobId());
+        lob = store.store(new SerialClob("hello".toCharArray()));
+        assertEquals(4, lob.getLength());
+        assertTrue(lob.isTruncated());
+        assertEquals("hell", new String(Files.readAllBytes(store.get(lob.getLobId()).getPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testDiskBudget() throws Exception {
+        QSLob first = store.store(new SerialBlob(new byte[] {1, 2, 3, 4, 5}));
+        assertTrue(first.isTruncated());
+        QSLob second = store.store(new SerialBlob(new byte[] {1, 2, 3}));
+        assertEquals(2, second.getLength());
+        assertTrue(second.isTruncated());
+        assertEquals(6, store.getUsedBytes());
+
+        //no room left
+        assertNull(store.store(new SerialBlob(new byte[] {1})));
+
+        store.remove(first.getLobId());
+        assertEquals(2, store.getUsedBytes());
+        assertNotNull(store.store(new SerialBlob(new byte[] {1})));
+    }
+
+    @Test
+    public void testCopyUtf8() throws Exception {
+        StringWriter writer = new StringWriter();
+        //the euro sign is 3 bytes
+        assertTrue(QueryLobStore.copyUtf8(new StringReader("a\u20ACb"), writer, 3));
+        assertEquals("a", writer.toString());
+
+        writer = new StringWriter();
+        //a surrogate pair is not split
+        assertTrue(QueryLobStore.copyUtf8(new StringReader("a\uD83D\uDE00"), writer, 3));
+        assertEquals("a", writer.toString());
+
+        writer = new StringWriter();
+        assertFalse(QueryLobStore.copyUtf8(new StringReader("a\uD83D\uDE00"), writer, 5));
+        assertEquals("a\uD83D\uDE00", writer.toString());
+    }
+
+}
@@ -24,11 +24,17 @@ import static org.mockito.Mockito.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import io.syndesis.dv.datasources.DefaultSyndesisDataSource;
@@ -40,11 +46,13 @@ import io.syndesis.dv.model.ViewDefinition;
 import io.syndesis.dv.server.endpoint.ServiceVdbGenerator.SchemaFinder;
 
 import org.mockito.Mockito;
+import org.teiid.adminapi.Admin.SchemaObjectType;
 import org.teiid.adminapi.impl.ModelMetaData;
 import org.teiid.adminapi.impl.VDBMetaData;
 import org.teiid.metadata.MetadataFactory;
 import org.teiid.metadata.Schema;
 import org.teiid.metadata.Table;
+import org.teiid.query.metadata.DDLStringVisitor;
 import org.teiid.query.metadata.SystemMetadata;
 import org.teiid.query.parser.QueryParser;
 
@@ -483,6 +491,52 @@ public class ServiceVdbGeneratorTest {
     }
 
 
+    @Test
+    public void shouldGetDDLForSelectedTables() throws Exception {
+        Schema schema = schemas.get(DS_NAME);
+        Set<Table> tables = new LinkedHashSet<>(Arrays.asList(schema.getTable("customers"), schema.getTable("orders")));
+
+        //same as the filtered output, in schema order
+        assertEquals(DDLStringVisitor.getDDLString(schema, EnumSet.of(SchemaObjectType.TABLES), "orders|customers"),
+                ServiceVdbGenerator.getDDLString(schema, tables));
+    }
+
+    @Test
+    public void benchmarkDDLForSelectedTables() throws Exception {
+        Assume.assumeFalse(Boolean.getBoolean("skipLongRunningTests"));
+
+        MetadataFactory mf = new MetadataFactory("x", 1, MODEL_NAME, SystemMetadata.getInstance().getRuntimeTypeMap(), new Properties(), null);
+        Set<Table> tables = new LinkedHashSet<>();
+        for (int i = 0; i < 20000; i++) {
+            Table t = mf.addTable("t" + i);
+            mf.addColumn("id", "long", t);
+            mf.addColumn("name", "string", t);
+            if (i % 10 == 0) {
+                tables.add(t);
+            }
+        }
+        Schema schema = mf.getSchema();
+
+        long start = System.nanoTime();
+        StringBuilder regex = new StringBuilder();
+        for (Table table : tables) {
+            if (regex.length() > 0) {
+                regex.append("|");
+            }
+            regex.append(Pattern.quote(table.getName()));
+        }
+        String expected = DDLStringVisitor.getDDLString(schema, EnumSet.of(SchemaObjectType.TABLES), regex.toString());
+        long regexMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        start = System.nanoTime();
+        String ddl = ServiceVdbGenerator.getDDLString(schema, tables);
+        long selectionMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(expected, ddl);
+        System.out.println(String.format("DDL for %s of %s tables - regex filter: %s ms, table selection: %s ms",
+                tables.size(), schema.getTables().size(), regexMillis, selectionMillis));
+    }
+
     protected ServiceVdbGenerator.SchemaFinder schemaFinder() {
         return new SchemaFinder() {
 